@@ -1,6 +1,7 @@
 package com.notifysync.notifysync.controller;
 
 
+import com.notifysync.notifysync.service.filter.ClassificationCascade;
 import com.notifysync.notifysync.service.processor.EmailProcessorService;
 import com.notifysync.notifysync.service.channel.NotificationChannel;
 import lombok.RequiredArgsConstructor;
@@ -24,6 +25,7 @@ public class StatusController {
 
     private final List<NotificationChannel> channels;
     private final EmailProcessorService emailProcessorService;
+    private final ClassificationCascade classificationCascade;
 
     @GetMapping
     public ResponseEntity<Map<String, Object>> getStatus() {
@@ -42,6 +44,7 @@ public class StatusController {
                 .collect(Collectors.toList());
 
         status.put("channels", channelStatus);
+        status.put("classification", classificationCascade.getStats());
 
         return ResponseEntity.ok(status);
     }
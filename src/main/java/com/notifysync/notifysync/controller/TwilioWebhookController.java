@@ -0,0 +1,48 @@
+package com.notifysync.notifysync.controller;
+
+
+import com.notifysync.notifysync.service.channel.WhatsAppChannel;
+import com.twilio.security.RequestValidator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Receives message status callbacks from Twilio. Requests are authenticated by
+ * Twilio's signature rather than by login, so this sits outside {@code /api}.
+ */
+@RestController
+@RequestMapping("/webhooks/twilio")
+@RequiredArgsConstructor
+@Slf4j
+public class TwilioWebhookController {
+
+    private final WhatsAppChannel whatsAppChannel;
+
+    @Value("${notifysync.whatsapp.auth-token:}")
+    private String authToken;
+
+    @Value("${notifysync.whatsapp.status-callback-url:}")
+    private String statusCallbackUrl;
+
+    @PostMapping("/status")
+    public ResponseEntity<Void> messageStatus(@RequestParam Map<String, String> params,
+                                              @RequestHeader(value = "X-Twilio-Signature", required = false) String signature) {
+        if (signature == null || statusCallbackUrl.isEmpty() ||
+                !new RequestValidator(authToken).validate(statusCallbackUrl, params, signature)) {
+            log.warn("Rejected Twilio status callback with invalid signature");
+            return ResponseEntity.status(403).build();
+        }
+
+        whatsAppChannel.onStatusCallback(params.get("MessageSid"), params.get("MessageStatus"));
+        return ResponseEntity.noContent().build();
+    }
+}
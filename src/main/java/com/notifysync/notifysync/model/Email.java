@@ -14,7 +14,11 @@ public class Email {
     private String subject;
     private String sender;
     private String senderEmail;
+    // Address the email was delivered to, which may be an alias of the account
+    private String mailbox;
     private String body;
+    private String snippet;
+    private List<String> labelIds;
     private LocalDateTime receivedAt;
     private List<String> attachments;
     private boolean isImportant;
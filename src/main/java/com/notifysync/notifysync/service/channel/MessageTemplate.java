@@ -0,0 +1,100 @@
+package com.notifysync.notifysync.service.channel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Message layout with {@code {sender}}, {@code {senderEmail}}, {@code {subject}},
+ * {@code {received}} and {@code {body}} placeholders, parsed once so formatting a
+ * {@link NotificationRenderer.RenderedEmail} is a single append per segment.
+ */
+public class MessageTemplate {
+
+    private enum Field {
+        SENDER("{sender}"),
+        SENDER_EMAIL("{senderEmail}"),
+        SUBJECT("{subject}"),
+        RECEIVED("{received}"),
+        BODY("{body}");
+
+        private final String placeholder;
+
+        Field(String placeholder) {
+            this.placeholder = placeholder;
+        }
+    }
+
+    // Each segment is either a literal String or a Field
+    private final Object[] segments;
+    private final String htmlNotice;
+    private final int literalLength;
+
+    private MessageTemplate(Object[] segments, String htmlNotice, int literalLength) {
+        this.segments = segments;
+        this.htmlNotice = htmlNotice;
+        this.literalLength = literalLength;
+    }
+
+    /**
+     * @param pattern The message layout
+     * @param htmlNotice Stands in for {@code {body}} when the email is an HTML document
+     */
+    public static MessageTemplate compile(String pattern, String htmlNotice) {
+        List<Object> segments = new ArrayList<>();
+        int literalLength = 0;
+        int literalStart = 0;
+        int i = 0;
+
+        while (i < pattern.length()) {
+            Field field = pattern.charAt(i) == '{' ? fieldAt(pattern, i) : null;
+            if (field == null) {
+                i++;
+                continue;
+            }
+            if (i > literalStart) {
+                segments.add(pattern.substring(literalStart, i));
+                literalLength += i - literalStart;
+            }
+            segments.add(field);
+            i += field.placeholder.length();
+            literalStart = i;
+        }
+        if (literalStart < pattern.length()) {
+            segments.add(pattern.substring(literalStart));
+            literalLength += pattern.length() - literalStart;
+        }
+
+        return new MessageTemplate(segments.toArray(), htmlNotice, literalLength);
+    }
+
+    public String format(NotificationRenderer.RenderedEmail email) {
+        StringBuilder sb = new StringBuilder(literalLength + email.subject().length() + email.body().length() + 64);
+        formatTo(sb, email);
+        return sb.toString();
+    }
+
+    public void formatTo(StringBuilder sb, NotificationRenderer.RenderedEmail email) {
+        for (Object segment : segments) {
+            if (segment instanceof String literal) {
+                sb.append(literal);
+                continue;
+            }
+            switch ((Field) segment) {
+                case SENDER -> sb.append(email.sender());
+                case SENDER_EMAIL -> sb.append(email.senderEmail());
+                case SUBJECT -> sb.append(email.subject());
+                case RECEIVED -> sb.append(email.receivedAt());
+                case BODY -> sb.append(email.html() && htmlNotice != null ? htmlNotice : email.body());
+            }
+        }
+    }
+
+    private static Field fieldAt(String pattern, int index) {
+        for (Field field : Field.values()) {
+            if (pattern.startsWith(field.placeholder, index)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
@@ -3,8 +3,38 @@ package com.notifysync.notifysync.service.channel;
 import com.notifysync.notifysync.model.Email;
 import com.notifysync.notifysync.model.Notification;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public interface NotificationChannel {
     boolean isAvailable();
+
+    /**
+     * Whether the channel can send at all, to its configured destination or any other address
+     */
+    boolean isConfigured();
     Notification.NotificationChannel getChannelType();
     boolean sendNotification(Email email);
+
+    /**
+     * Send the notification to each of the given addresses instead of the configured destination
+     *
+     * @return Completes with the addresses it could not be sent to
+     */
+    CompletableFuture<List<String>> sendNotification(Email email, List<String> addresses);
+
+    /**
+     * Send one combined message listing several emails
+     */
+    boolean sendDigest(List<Email> emails);
+
+    /**
+     * Sustained send rate the provider allows
+     */
+    double getMessagesPerSecond();
+
+    /**
+     * Messages that may be sent back to back before the rate applies
+     */
+    int getMessageBurst();
 }
@@ -0,0 +1,161 @@
+package com.notifysync.notifysync.service.channel;
+
+import com.notifysync.notifysync.model.Email;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Turns emails into the channel-neutral text that notification templates format.
+ * <p>
+ * The body is cleaned up in a single pass: tags are stripped, common entities decoded,
+ * blank lines and trailing spaces dropped, and the result truncated, stopping as soon
+ * as the limit is reached. The result is cached per email ID, so every channel and
+ * every retry of the same email reuses it.
+ */
+@Service
+public class NotificationRenderer {
+
+    private static final String[] ENTITIES = {"&nbsp;", "&lt;", "&gt;", "&amp;", "&quot;", "&apos;"};
+    private static final char[] DECODED = {' ', '<', '>', '&', '"', '\''};
+
+    @Value("${notifysync.notification.body-max-length:500}")
+    private int bodyMaxLength;
+
+    @Value("${notifysync.notification.render-cache-size:256}")
+    private int cacheSize;
+
+    // Guarded by itself; least recently used entries are evicted
+    private final Map<String, RenderedEmail> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RenderedEmail> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    public RenderedEmail render(Email email) {
+        if (email.getId() == null) {
+            return renderUncached(email);
+        }
+        synchronized (cache) {
+            RenderedEmail cached = cache.get(email.getId());
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        RenderedEmail rendered = renderUncached(email);
+        synchronized (cache) {
+            cache.put(email.getId(), rendered);
+        }
+        return rendered;
+    }
+
+    private RenderedEmail renderUncached(Email email) {
+        // Fall back to the snippet when the body was never fetched
+        String body = email.getBody() != null ? email.getBody() : email.getSnippet();
+        boolean html = body != null && isHtmlDocument(body);
+
+        return new RenderedEmail(
+                String.valueOf(email.getSender()),
+                String.valueOf(email.getSenderEmail()),
+                String.valueOf(email.getSubject()),
+                String.valueOf(email.getReceivedAt()),
+                body == null || html ? "" : normalizeBody(body, bodyMaxLength),
+                html);
+    }
+
+    private static boolean isHtmlDocument(String body) {
+        return body.contains("<html") || body.contains("<!DOCTYPE") || body.contains("<style") ||
+                body.contains("<head") || body.contains("<body");
+    }
+
+    /**
+     * Strip tags, decode entities, drop blank lines and trailing whitespace, trim, and
+     * cut at {@code maxLength} characters with an ellipsis
+     */
+    static String normalizeBody(String body, int maxLength) {
+        StringBuilder out = new StringBuilder(Math.min(body.length(), maxLength + 3));
+        // Whitespace is held back until the line turns out to have more content
+        StringBuilder pending = new StringBuilder();
+        boolean pendingNewline = false;
+        int length = body.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = body.charAt(i);
+
+            if (c == '<') {
+                int close = body.indexOf('>', i + 1);
+                if (close >= 0) {
+                    i = close;
+                    continue;
+                }
+            } else if (c == '&') {
+                int entity = matchEntity(body, i);
+                if (entity >= 0) {
+                    i += ENTITIES[entity].length() - 1;
+                    c = DECODED[entity];
+                }
+            }
+
+            if (c == '\n') {
+                pendingNewline |= out.length() > 0;
+                pending.setLength(0);
+                continue;
+            }
+            if (c == ' ' || c == '\t' || c == '\r') {
+                if (c != '\r') {
+                    pending.append(c);
+                }
+                continue;
+            }
+
+            // A content character: emit the line break and indentation held before it
+            if (out.length() > 0) {
+                if (pendingNewline && !append(out, '\n', maxLength)) {
+                    return out.append("...").toString();
+                }
+                for (int j = 0; j < pending.length(); j++) {
+                    if (!append(out, pending.charAt(j), maxLength)) {
+                        return out.append("...").toString();
+                    }
+                }
+            }
+            pendingNewline = false;
+            pending.setLength(0);
+            if (!append(out, c, maxLength)) {
+                return out.append("...").toString();
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean append(StringBuilder out, char c, int maxLength) {
+        if (out.length() >= maxLength) {
+            return false;
+        }
+        out.append(c);
+        return true;
+    }
+
+    private static int matchEntity(String body, int at) {
+        for (int e = 0; e < ENTITIES.length; e++) {
+            if (body.startsWith(ENTITIES[e], at)) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * An email reduced to what notification templates need
+     *
+     * @param body Cleaned-up body text; empty when the email is an HTML document
+     * @param html Whether the email is an HTML document that can't be shown as text
+     */
+    public record RenderedEmail(String sender, String senderEmail, String subject, String receivedAt,
+                                String body, boolean html) {
+    }
+}
@@ -2,32 +2,85 @@ package com.notifysync.notifysync.service.channel;
 
 import com.notifysync.notifysync.model.Email;
 import com.notifysync.notifysync.model.Notification;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
-import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Update;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 @Slf4j
 @Order(2)
 public class TelegramChannel extends TelegramLongPollingBot implements NotificationChannel {
 
+    private static final MessageTemplate NOTIFICATION_TEMPLATE = MessageTemplate.compile(
+            "<b>New Important Email</b>\n\n" +
+                    "<b>From:</b> {sender} &lt;{senderEmail}&gt;\n" +
+                    "<b>Subject:</b> {subject}\n" +
+                    "<b>Received:</b> {received}\n\n" +
+                    "{body}",
+            "This email contains rich HTML content.\n\nPlease check your email inbox for the complete message.");
+
+    private static final MessageTemplate DIGEST_ITEM_TEMPLATE = MessageTemplate.compile(
+            "\n<b>From:</b> {sender} &lt;{senderEmail}&gt;\n" +
+                    "<b>Subject:</b> {subject}\n",
+            null);
+
     @Value("${notifysync.telegram.chat-id}")
     private String chatId;
 
     @Value("${notifysync.telegram.bot-username:NotifySyncBot}")
     private String botUsername;
 
+    @Value("${notifysync.telegram.rate-limit.messages-per-second:1}")
+    private double messagesPerSecond;
+
+    @Value("${notifysync.telegram.rate-limit.burst:3}")
+    private int messageBurst;
+
+    @Value("${notifysync.telegram.per-chat-interval-millis:1000}")
+    private long perChatIntervalMillis;
+
+    @Value("${notifysync.telegram.global-messages-per-second:30}")
+    private double globalMessagesPerSecond;
+
+    @Value("${notifysync.telegram.flood-retries:3}")
+    private int floodRetries;
+
+    @Value("${notifysync.telegram.send-timeout-seconds:60}")
+    private long sendTimeoutSeconds;
+
     @Value("${notifysync.telegram.bot-token}")
     private final String botToken;
 
-    public TelegramChannel(@Value("${notifysync.telegram.bot-token}")String botToken) {
+    private TelegramSender sender;
+
+    private final NotificationRenderer renderer;
+
+    public TelegramChannel(@Value("${notifysync.telegram.bot-token}")String botToken, NotificationRenderer renderer) {
         super(botToken);
         this.botToken = botToken;
+        this.renderer = renderer;
+    }
+
+    @PostConstruct
+    public void init() {
+        sender = new TelegramSender(this, perChatIntervalMillis, globalMessagesPerSecond, floodRetries);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.close();
     }
 
     @Override
@@ -46,11 +99,26 @@ public class TelegramChannel extends TelegramLongPollingBot implements Notificat
         return botToken != null && !botToken.isEmpty() && chatId != null && !chatId.isEmpty();
     }
 
+    @Override
+    public boolean isConfigured() {
+        return botToken != null && !botToken.isEmpty();
+    }
+
     @Override
     public Notification.NotificationChannel getChannelType() {
         return Notification.NotificationChannel.TELEGRAM;
     }
 
+    @Override
+    public double getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    @Override
+    public int getMessageBurst() {
+        return messageBurst;
+    }
+
     @Override
     public boolean sendNotification(Email email) {
         if (!isAvailable()) {
@@ -58,65 +126,75 @@ public class TelegramChannel extends TelegramLongPollingBot implements Notificat
             return false;
         }
 
-        try {
-            String message = formatEmailForTelegram(email);
-            SendMessage sendMessage = new SendMessage();
-            sendMessage.setChatId(chatId);
-            sendMessage.setText(message);
-            sendMessage.enableHtml(true);
-
-            execute(sendMessage);
+        boolean sent = deliver(NOTIFICATION_TEMPLATE.format(renderer.render(email)));
+        if (sent) {
             log.info("Sent notification via Telegram for email: {}", email.getSubject());
-            return true;
-        } catch (TelegramApiException e) {
-            log.error("Failed to send Telegram notification", e);
-            return false;
         }
+        return sent;
     }
 
-    private String formatEmailForTelegram(Email email) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("<b>New Important Email</b>\n\n");
-        sb.append("<b>From:</b> ").append(email.getSender()).append(" &lt;").append(email.getSenderEmail()).append("&gt;\n");
-        sb.append("<b>Subject:</b> ").append(email.getSubject()).append("\n");
-        sb.append("<b>Received:</b> ").append(email.getReceivedAt()).append("\n\n");
-
-        // Get and process body
-        String body = email.getBody();
-        if (body != null) {
-            // First check if it looks like HTML content
-            if (body.contains("<html") || body.contains("<!DOCTYPE") || body.contains("<style") ||
-                    body.contains("<head") || body.contains("<body")) {
-
-                // For HTML emails, extract just readable text or provide a summary
-                body = "This email contains rich HTML content.\n\nPlease check your email inbox for the complete message.";
-            } else {
-                // For regular emails, strip any HTML tags that might be present
-                body = body.replaceAll("<[^>]*>", "");
-
-                // Convert common HTML entities
-                body = body.replace("&nbsp;", " ")
-                        .replace("&lt;", "<")
-                        .replace("&gt;", ">")
-                        .replace("&amp;", "&")
-                        .replace("&quot;", "\"")
-                        .replace("&apos;", "'");
-
-                // Clean up excessive whitespace
-                body = body.replaceAll("(?m)^[ \t]*\r?\n", ""); // Remove empty lines
-                body = body.replaceAll("[ \t]+\r?\n", "\n");    // Remove trailing spaces
-                body = body.replaceAll("\n{3,}", "\n\n");       // Replace 3+ consecutive newlines with just 2
-                body = body.trim();                            // Trim leading/trailing whitespace
-
-                // Truncate if too long
-                if (body.length() > 500) {
-                    body = body.substring(0, 500) + "...";
+    @Override
+    public CompletableFuture<List<String>> sendNotification(Email email, List<String> chatIds) {
+        if (!isConfigured()) {
+            log.warn("Telegram channel is not available");
+            return CompletableFuture.completedFuture(chatIds);
+        }
+
+        // Rendered once and queued for every chat; the sender paces them
+        String message = NOTIFICATION_TEMPLATE.format(renderer.render(email));
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(chatIds.size());
+        for (String id : chatIds) {
+            results.add(sender.send(id, message, true).completeOnTimeout(false, sendTimeoutSeconds, TimeUnit.SECONDS));
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<String> failed = new ArrayList<>();
+            for (int i = 0; i < chatIds.size(); i++) {
+                if (!results.get(i).join()) {
+                    failed.add(chatIds.get(i));
                 }
             }
+            return failed;
+        });
+    }
+
+    @Override
+    public boolean sendDigest(List<Email> emails) {
+        if (!isAvailable()) {
+            log.warn("Telegram channel is not available");
+            return false;
         }
 
-        sb.append(body);
+        boolean sent = deliver(formatDigestForTelegram(emails));
+        if (sent) {
+            log.info("Sent digest of {} emails via Telegram", emails.size());
+        }
+        return sent;
+    }
 
+    /**
+     * Queue a message on the sender and wait for the outcome, abandoning it after the send timeout
+     */
+    private boolean deliver(String message) {
+        CompletableFuture<Boolean> result = sender.send(chatId, message, true);
+        try {
+            return result.get(sendTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Telegram message not sent within {}s, giving up on it", sendTimeoutSeconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Failed to send Telegram notification", e.getCause());
+        }
+        result.complete(false);
+        return false;
+    }
+
+    private String formatDigestForTelegram(List<Email> emails) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<b>").append(emails.size()).append(" New Emails</b>\n");
+        for (Email email : emails) {
+            DIGEST_ITEM_TEMPLATE.formatTo(sb, renderer.render(email));
+        }
         return sb.toString();
     }
 }
\ No newline at end of file
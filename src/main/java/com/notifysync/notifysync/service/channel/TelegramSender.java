@@ -0,0 +1,217 @@
+package com.notifysync.notifysync.service.channel;
+
+import lombok.extern.slf4j.Slf4j;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbound message pipeline for the Telegram bot.
+ * <p>
+ * Messages are queued per chat and sent by a pump thread that keeps each chat to one
+ * message per {@code perChatIntervalMillis} and the bot as a whole to
+ * {@code globalMessagesPerSecond}. Sends run asynchronously on the bot's own executor.
+ * When Telegram answers with a flood-control error, the chat is paused for the
+ * {@code retry_after} it asks for and the message is tried again. Text over Telegram's
+ * 4096-character limit is split at line breaks and sent as consecutive messages.
+ */
+@Slf4j
+public class TelegramSender implements Closeable {
+
+    static final int MAX_MESSAGE_LENGTH = 4096;
+    private static final long PUMP_INTERVAL_MILLIS = 20;
+
+    private final AbsSender bot;
+    private final long perChatIntervalMillis;
+    private final long globalIntervalNanos;
+    private final int maxRetries;
+    private final ScheduledExecutorService pump;
+
+    // Guarded by this; kept in least recently served order so busy chats take turns
+    private final Map<String, ChatQueue> chats = new LinkedHashMap<>();
+    private long nextGlobalSendAt = System.nanoTime();
+
+    public TelegramSender(AbsSender bot, long perChatIntervalMillis, double globalMessagesPerSecond, int maxRetries) {
+        this.bot = bot;
+        this.perChatIntervalMillis = perChatIntervalMillis;
+        this.globalIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / globalMessagesPerSecond);
+        this.maxRetries = maxRetries;
+        this.pump = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "telegram-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pump.scheduleWithFixedDelay(this::pump, PUMP_INTERVAL_MILLIS, PUMP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queue a message for a chat
+     *
+     * @return Completes with true once every part is sent, or false if Telegram rejected it.
+     *         Completing it early cancels the parts not sent yet.
+     */
+    public CompletableFuture<Boolean> send(String chatId, String text, boolean html) {
+        OutgoingMessage message = new OutgoingMessage(split(text, MAX_MESSAGE_LENGTH), html);
+        synchronized (this) {
+            chats.computeIfAbsent(chatId, ChatQueue::new).messages.add(message);
+        }
+        pump.execute(this::pump);
+        return message.result;
+    }
+
+    @Override
+    public void close() {
+        pump.shutdownNow();
+        synchronized (this) {
+            for (ChatQueue chat : chats.values()) {
+                chat.messages.forEach(message -> message.result.complete(false));
+            }
+            chats.clear();
+        }
+    }
+
+    private synchronized void pump() {
+        long now = System.currentTimeMillis();
+        List<ChatQueue> served = new ArrayList<>();
+        Iterator<ChatQueue> iterator = chats.values().iterator();
+
+        while (iterator.hasNext()) {
+            ChatQueue chat = iterator.next();
+            if (chat.inFlight || now < chat.nextSendAt) {
+                continue;
+            }
+
+            OutgoingMessage message = chat.messages.peek();
+            while (message != null && message.result.isDone()) {
+                // Abandoned by the caller
+                chat.messages.poll();
+                message = chat.messages.peek();
+            }
+            if (message == null) {
+                // Idle and past its pacing interval, so there is no state worth keeping
+                iterator.remove();
+                continue;
+            }
+
+            if (System.nanoTime() < nextGlobalSendAt) {
+                break;
+            }
+            nextGlobalSendAt = System.nanoTime() + globalIntervalNanos;
+            sendPart(chat, message);
+            served.add(chat);
+        }
+
+        // Move served chats behind the ones still waiting for their turn
+        for (ChatQueue chat : served) {
+            chats.remove(chat.chatId);
+            chats.put(chat.chatId, chat);
+        }
+    }
+
+    private void sendPart(ChatQueue chat, OutgoingMessage message) {
+        SendMessage sendMessage = new SendMessage();
+        sendMessage.setChatId(chat.chatId);
+        sendMessage.setText(message.parts.get(message.nextPart));
+        sendMessage.enableHtml(message.html);
+
+        chat.inFlight = true;
+        try {
+            bot.executeAsync(sendMessage).whenComplete((sent, error) -> onSent(chat, message, error));
+        } catch (Exception e) {
+            onSent(chat, message, e);
+        }
+    }
+
+    private synchronized void onSent(ChatQueue chat, OutgoingMessage message, Throwable error) {
+        chat.inFlight = false;
+        long now = System.currentTimeMillis();
+
+        if (error == null) {
+            chat.nextSendAt = now + perChatIntervalMillis;
+            message.retries = 0;
+            if (++message.nextPart == message.parts.size()) {
+                chat.messages.remove(message);
+                message.result.complete(true);
+            }
+            return;
+        }
+
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        Integer retryAfter = cause instanceof TelegramApiRequestException requestException &&
+                requestException.getParameters() != null ? requestException.getParameters().getRetryAfter() : null;
+
+        if (retryAfter != null && message.retries++ < maxRetries) {
+            log.warn("Telegram flood control for chat {}, retrying in {}s", chat.chatId, retryAfter);
+            chat.nextSendAt = now + TimeUnit.SECONDS.toMillis(retryAfter);
+            return;
+        }
+
+        log.error("Failed to send Telegram message to chat {}", chat.chatId, cause);
+        chat.nextSendAt = now + perChatIntervalMillis;
+        chat.messages.remove(message);
+        message.result.complete(false);
+    }
+
+    /**
+     * Split text into parts of at most {@code maxLength} characters, preferring line breaks
+     */
+    static List<String> split(String text, int maxLength) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        while (text.length() - start > maxLength) {
+            int end = text.lastIndexOf('\n', start + maxLength);
+            if (end <= start) {
+                end = start + maxLength;
+                // Don't separate a surrogate pair
+                if (Character.isHighSurrogate(text.charAt(end - 1))) {
+                    end--;
+                }
+                parts.add(text.substring(start, end));
+                start = end;
+            } else {
+                parts.add(text.substring(start, end));
+                start = end + 1;
+            }
+        }
+        parts.add(text.substring(start));
+        return parts;
+    }
+
+    private static class ChatQueue {
+        private final String chatId;
+        private final Deque<OutgoingMessage> messages = new ArrayDeque<>();
+        private long nextSendAt;
+        private boolean inFlight;
+
+        private ChatQueue(String chatId) {
+            this.chatId = chatId;
+        }
+    }
+
+    private static class OutgoingMessage {
+        private final List<String> parts;
+        private final boolean html;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        private int nextPart;
+        private int retries;
+
+        private OutgoingMessage(List<String> parts, boolean html) {
+            this.parts = parts;
+            this.html = html;
+        }
+    }
+}
@@ -3,24 +3,46 @@ package com.notifysync.notifysync.service.channel;
 import com.notifysync.notifysync.model.Email;
 import com.notifysync.notifysync.model.Notification;
 import com.notifysync.notifysync.service.tracking.EmailTrackingService;
-import com.twilio.Twilio;
-import com.twilio.rest.api.v2010.account.Message;
-import com.twilio.type.PhoneNumber;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
+@RequiredArgsConstructor
 @Slf4j
 @Order(1)
 public class WhatsAppChannel implements NotificationChannel {
 
+    private static final MessageTemplate NOTIFICATION_TEMPLATE = MessageTemplate.compile(
+            "📥 *New Important Email*\n\n" +
+                    "*From:* {sender} ({senderEmail})\n" +
+                    "*Subject:* {subject}\n" +
+                    "*Received:* {received}\n\n" +
+                    "{body}",
+            "This email contains rich HTML content that can't be displayed in WhatsApp.\n\n" +
+                    "Please check your email inbox for the complete message.");
+
+    private static final MessageTemplate DIGEST_ITEM_TEMPLATE = MessageTemplate.compile(
+            "\n*From:* {sender} ({senderEmail})\n" +
+                    "*Subject:* {subject}\n",
+            null);
+
+    private final NotificationRenderer renderer;
+
     @Value("${notifysync.whatsapp.enabled:false}")
     private boolean enabled;
 
@@ -36,23 +58,65 @@ public class WhatsAppChannel implements NotificationChannel {
     @Value("${notifysync.whatsapp.to-number:}")
     private String toNumber;
 
+    @Value("${notifysync.whatsapp.rate-limit.messages-per-second:10}")
+    private double messagesPerSecond;
+
+    @Value("${notifysync.whatsapp.rate-limit.burst:10}")
+    private int messageBurst;
+
+    // Empty for the real Twilio API; set to point at a local stand-in
+    @Value("${notifysync.whatsapp.api-base-url:}")
+    private String apiBaseUrl;
+
+    @Value("${notifysync.whatsapp.status-callback-url:}")
+    private String statusCallbackUrl;
 
+    @Value("${notifysync.whatsapp.max-in-flight:4}")
+    private int maxInFlight;
+
+    @Value("${notifysync.whatsapp.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${notifysync.whatsapp.send-timeout-seconds:30}")
+    private long sendTimeoutSeconds;
+
+    private WhatsAppSender sender;
 
     @PostConstruct
     public void init() {
-        if (isAvailable()) {
-            Twilio.init(accountSid, authToken);
+        if (isConfigured()) {
+            sender = new WhatsAppSender(accountSid, authToken, apiBaseUrl, statusCallbackUrl, maxInFlight, queueCapacity);
             log.info("WhatsApp (Twilio) service initialized");
         }
     }
 
+    @PreDestroy
+    public void shutdown() {
+        if (sender != null) {
+            sender.close();
+        }
+    }
+
+    /**
+     * Handle a message status callback from Twilio
+     */
+    public void onStatusCallback(String messageSid, String messageStatus) {
+        if (sender != null) {
+            sender.onStatus(messageSid, messageStatus);
+        }
+    }
+
     @Override
     public boolean isAvailable() {
+        return isConfigured() && toNumber != null && !toNumber.isEmpty();
+    }
+
+    @Override
+    public boolean isConfigured() {
         return enabled &&
                 accountSid != null && !accountSid.isEmpty() &&
                 authToken != null && !authToken.isEmpty() &&
-                fromNumber != null && !fromNumber.isEmpty() &&
-                toNumber != null && !toNumber.isEmpty();
+                fromNumber != null && !fromNumber.isEmpty();
     }
 
     @Override
@@ -60,6 +124,16 @@ public class WhatsAppChannel implements NotificationChannel {
         return Notification.NotificationChannel.WHATSAPP;
     }
 
+    @Override
+    public double getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    @Override
+    public int getMessageBurst() {
+        return messageBurst;
+    }
+
     @Override
     public boolean sendNotification(Email email) {
         if (!isAvailable()) {
@@ -85,12 +159,12 @@ public class WhatsAppChannel implements NotificationChannel {
             String messageBody = formatEmailForWhatsApp(email, trackingCode);
             */
 
-            String messageBody = formatEmailForWhatsApp(email);
-            PhoneNumber from = new PhoneNumber("whatsapp:" + fromNumber);
-            PhoneNumber to = new PhoneNumber("whatsapp:" + toNumber);
-
-            Message message = Message.creator(to, from, messageBody).create();
-            log.info("Sent notification via WhatsApp for email: {}, SID: {}", email.getSubject(), message.getSid());
+            String messageBody = NOTIFICATION_TEMPLATE.format(renderer.render(email));
+            String sid = deliver(messageBody, "email " + email.getId());
+            if (sid == null) {
+                return false;
+            }
+            log.info("Sent notification via WhatsApp for email: {}, SID: {}", email.getSubject(), sid);
             return true;
         } catch (Exception e) {
             log.error("Failed to send WhatsApp notification", e);
@@ -98,55 +172,77 @@ public class WhatsAppChannel implements NotificationChannel {
         }
     }
 
-    private String formatEmailForWhatsApp(Email email) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("📥 *New Important Email*\n\n");
-        sb.append("*From:* ").append(email.getSender()).append(" (").append(email.getSenderEmail()).append(")\n");
-        sb.append("*Subject:* ").append(email.getSubject()).append("\n");
-        sb.append("*Received:* ").append(email.getReceivedAt()).append("\n\n");
-
-        // Get and process body
-        String body = email.getBody();
-        if (body != null) {
-            // First check if it looks like HTML content
-            if (body.contains("<html") || body.contains("<!DOCTYPE") || body.contains("<style") ||
-                    body.contains("<head") || body.contains("<body")) {
-
-                // For HTML emails, extract just readable text or provide a summary
-                body = "This email contains rich HTML content that can't be displayed in WhatsApp.\n\nPlease check your email inbox for the complete message.";
-            } else {
-                // For regular emails, strip any HTML tags that might be present
-                body = body.replaceAll("<[^>]*>", "");
-
-                // Convert common HTML entities
-                body = body.replace("&nbsp;", " ")
-                        .replace("&lt;", "<")
-                        .replace("&gt;", ">")
-                        .replace("&amp;", "&")
-                        .replace("&quot;", "\"")
-                        .replace("&apos;", "'");
-
-                // Clean up excessive whitespace
-                body = body.replaceAll("(?m)^[ \t]*\r?\n", ""); // Remove empty lines
-                body = body.replaceAll("[ \t]+\r?\n", "\n");    // Remove trailing spaces
-                body = body.replaceAll("\n{3,}", "\n\n");       // Replace 3+ consecutive newlines with just 2
-                body = body.trim();                            // Trim leading/trailing whitespace
-
-                // Truncate if too long
-                if (body.length() > 500) {
-                    body = body.substring(0, 500) + "...";
+    @Override
+    public CompletableFuture<List<String>> sendNotification(Email email, List<String> numbers) {
+        if (sender == null) {
+            log.warn("WhatsApp channel is not available");
+            return CompletableFuture.completedFuture(numbers);
+        }
+
+        String messageBody = NOTIFICATION_TEMPLATE.format(renderer.render(email));
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(numbers.size());
+        for (String number : numbers) {
+            String reference = "email " + email.getId() + " to " + number;
+            results.add(sender.send(fromNumber, number, messageBody, reference)
+                    .handle((sid, error) -> {
+                        if (error != null) {
+                            log.error("Failed to send WhatsApp message for {}", reference, error);
+                        }
+                        return error == null;
+                    })
+                    .completeOnTimeout(false, sendTimeoutSeconds, TimeUnit.SECONDS));
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<String> failed = new ArrayList<>();
+            for (int i = 0; i < numbers.size(); i++) {
+                if (!results.get(i).join()) {
+                    failed.add(numbers.get(i));
                 }
             }
+            return failed;
+        });
+    }
+
+    @Override
+    public boolean sendDigest(List<Email> emails) {
+        if (!isAvailable()) {
+            log.warn("WhatsApp channel is not available");
+            return false;
         }
 
-        sb.append(body);
+        String sid = deliver(formatDigestForWhatsApp(emails), "digest of " + emails.size() + " emails");
+        if (sid == null) {
+            return false;
+        }
+        log.info("Sent digest of {} emails via WhatsApp, SID: {}", emails.size(), sid);
+        return true;
+    }
 
-        // Add feedback instructions
-//        sb.append("\n\n---\n");
-//        sb.append("Was this notification useful?\n");
-//        sb.append("Reply with: *YES-").append(trackingCode).append("* if relevant\n");
-//        sb.append("Reply with: *NO-").append(trackingCode).append("* if not important");
+    /**
+     * Submit a message and wait for Twilio to accept it
+     *
+     * @return The message SID, or null if it was not accepted
+     */
+    private String deliver(String messageBody, String reference) {
+        CompletableFuture<String> result = sender.send(fromNumber, toNumber, messageBody, reference);
+        try {
+            return result.get(sendTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Twilio did not accept WhatsApp message for {} within {}s", reference, sendTimeoutSeconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Failed to send WhatsApp message for {}", reference, e.getCause());
+        }
+        return null;
+    }
 
+    private String formatDigestForWhatsApp(List<Email> emails) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("📥 *").append(emails.size()).append(" New Emails*\n");
+        for (Email email : emails) {
+            DIGEST_ITEM_TEMPLATE.formatTo(sb, renderer.render(email));
+        }
         return sb.toString();
     }
 
@@ -0,0 +1,185 @@
+package com.notifysync.notifysync.service.channel;
+
+import com.twilio.http.HttpMethod;
+import com.twilio.http.NetworkHttpClient;
+import com.twilio.http.Request;
+import com.twilio.http.Response;
+import com.twilio.http.TwilioRestClient;
+import com.twilio.rest.api.v2010.account.Message;
+import com.twilio.rest.api.v2010.account.MessageCreator;
+import com.twilio.type.PhoneNumber;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Sends WhatsApp messages through a dedicated Twilio client.
+ * <p>
+ * Unlike the static {@code Twilio.init} client, this one has its own pooled HTTP
+ * connections and can be pointed at a stand-in for the Twilio API. Submissions return
+ * immediately; at most {@code maxInFlight} requests run at once and up to
+ * {@code queueCapacity} more wait, beyond which submissions are rejected. Sent message
+ * SIDs are remembered with a reference to what was sent, so Twilio's status callbacks
+ * can be matched back to it.
+ */
+@Slf4j
+public class WhatsAppSender implements Closeable {
+
+    private static final String TWILIO_API_BASE_URL = "https://api.twilio.com";
+    private static final int TRACKED_MESSAGES = 1000;
+
+    private final TwilioRestClient client;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final ThreadPoolExecutor executor;
+    private final String statusCallbackUrl;
+
+    // Guarded by itself; oldest entries are dropped once TRACKED_MESSAGES is exceeded
+    private final Map<String, String> referencesBySid = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > TRACKED_MESSAGES;
+        }
+    };
+
+    /**
+     * @param apiBaseUrl Base URL of the Twilio API, or empty for the real one
+     * @param statusCallbackUrl Where Twilio should report delivery status, or empty for no callbacks
+     */
+    public WhatsAppSender(String accountSid, String authToken, String apiBaseUrl, String statusCallbackUrl,
+                          int maxInFlight, int queueCapacity) {
+        this.statusCallbackUrl = statusCallbackUrl;
+
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxInFlight);
+        connectionManager.setDefaultMaxPerRoute(maxInFlight);
+        HttpClientBuilder httpClientBuilder = HttpClientBuilder.create().setConnectionManager(connectionManager);
+
+        client = new TwilioRestClient.Builder(accountSid, authToken)
+                .httpClient(apiBaseUrl == null || apiBaseUrl.isEmpty() ?
+                        new NetworkHttpClient(httpClientBuilder) :
+                        new RebasingHttpClient(httpClientBuilder, apiBaseUrl))
+                .build();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxInFlight, maxInFlight, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "whatsapp-sender-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Submit a message without waiting for Twilio
+     *
+     * @param reference Describes the message in logs when its status is reported
+     * @return Completes with the message SID, or exceptionally if Twilio rejected it or
+     *         the queue is full
+     */
+    public CompletableFuture<String> send(String from, String to, String body, String reference) {
+        MessageCreator creator = Message.creator(
+                new PhoneNumber("whatsapp:" + to), new PhoneNumber("whatsapp:" + from), body);
+        if (statusCallbackUrl != null && !statusCallbackUrl.isEmpty()) {
+            creator.setStatusCallback(statusCallbackUrl);
+        }
+
+        CompletableFuture<Message> created;
+        try {
+            created = CompletableFuture.supplyAsync(() -> creator.create(client), executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return created.thenApply(message -> {
+            synchronized (referencesBySid) {
+                referencesBySid.put(message.getSid(), reference);
+            }
+            return message.getSid();
+        });
+    }
+
+    /**
+     * Handle a delivery status reported by Twilio for a message sent here
+     */
+    public void onStatus(String sid, String status) {
+        String reference;
+        boolean terminal = "delivered".equals(status) || "read".equals(status) ||
+                "failed".equals(status) || "undelivered".equals(status);
+        synchronized (referencesBySid) {
+            reference = terminal ? referencesBySid.remove(sid) : referencesBySid.get(sid);
+        }
+
+        if (reference == null) {
+            log.debug("Status {} for untracked WhatsApp message {}", status, sid);
+        } else if ("failed".equals(status) || "undelivered".equals(status)) {
+            log.error("WhatsApp message {} for {} was not delivered: {}", sid, reference, status);
+        } else {
+            log.debug("WhatsApp message {} for {} is {}", sid, reference, status);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+        connectionManager.close();
+    }
+
+    /**
+     * Sends requests meant for the Twilio API to another base URL instead
+     */
+    private static class RebasingHttpClient extends NetworkHttpClient {
+
+        private final String baseUrl;
+
+        private RebasingHttpClient(HttpClientBuilder builder, String baseUrl) {
+            super(builder);
+            this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        }
+
+        @Override
+        public Response makeRequest(Request request) {
+            if (!request.getUrl().startsWith(TWILIO_API_BASE_URL)) {
+                return super.makeRequest(request);
+            }
+
+            Request rebased = new Request(request.getMethod(), baseUrl + request.getUrl().substring(TWILIO_API_BASE_URL.length()));
+            copyParams(request.getQueryParams(), rebased::addQueryParam);
+            copyParams(request.getPostParams(), rebased::addPostParam);
+            copyParams(request.getHeaderParams(), rebased::addHeaderParam);
+            if (request.getAuthStrategy() != null) {
+                rebased.setAuth(request.getAuthStrategy());
+            } else if (request.getUsername() != null) {
+                rebased.setAuth(request.getUsername(), request.getPassword());
+            }
+            rebased.setContentType(request.getContentType());
+            if (request.getBody() != null && request.getMethod() != HttpMethod.GET) {
+                rebased.setBody(request.getBody());
+            }
+            return super.makeRequest(rebased);
+        }
+
+        private static void copyParams(Map<String, List<String>> params, BiConsumer<String, String> adder) {
+            params.forEach((name, values) -> values.forEach(value -> adder.accept(name, value)));
+        }
+    }
+}
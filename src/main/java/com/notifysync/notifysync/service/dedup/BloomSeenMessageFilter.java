@@ -0,0 +1,183 @@
+package com.notifysync.notifysync.service.dedup;
+
+import com.notifysync.notifysync.service.tracking.MessageIds;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SeenMessageFilter} made of generations of {@link ScalableBloomFilter}s.
+ * <p>
+ * New IDs go into the current generation; lookups check all of them. Once a generation
+ * is {@code generation-days} old a new one is started, and only the newest
+ * {@code max-generations} are kept, so memory is bounded by the ID rate times the
+ * retention at a few bytes per ID. The filter is saved to disk periodically and on
+ * shutdown.
+ */
+@Service
+@Slf4j
+public class BloomSeenMessageFilter implements SeenMessageFilter {
+
+    private static final int MAGIC = 0x4E534246; // "NSBF"
+    private static final int VERSION = 1;
+
+    @Value("${notifysync.dedup.seen-filter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${notifysync.dedup.seen-filter.file:seen_messages.bloom}")
+    private String storageFile;
+
+    @Value("${notifysync.dedup.seen-filter.false-positive-rate:0.000001}")
+    private double falsePositiveRate;
+
+    @Value("${notifysync.dedup.seen-filter.initial-capacity:10000}")
+    private long initialCapacity;
+
+    @Value("${notifysync.dedup.seen-filter.generation-days:30}")
+    private int generationDays;
+
+    @Value("${notifysync.dedup.seen-filter.max-generations:6}")
+    private int maxGenerations;
+
+    // Newest generation first
+    private final Deque<Generation> generations = new ArrayDeque<>();
+    private volatile boolean dirty;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("Seen-message filter disabled");
+            return;
+        }
+
+        Path file = Paths.get(storageFile);
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                read(in);
+            } catch (IOException e) {
+                // Only costs dedupe memory beyond the exact store's retention
+                log.error("Failed to load seen-message filter, starting empty", e);
+                generations.clear();
+            }
+        }
+
+        long ids = generations.stream().mapToLong(generation -> generation.filter.size()).sum();
+        long bytes = generations.stream().mapToLong(generation -> generation.filter.sizeInBytes()).sum();
+        log.info("Seen-message filter holds ~{} IDs in {} generations ({} KB)", ids, generations.size(), bytes / 1024);
+    }
+
+    @Override
+    public synchronized boolean mightHaveSeen(String messageId) {
+        if (!enabled) {
+            return false;
+        }
+        long key = MessageIds.toKey(messageId);
+        for (Generation generation : generations) {
+            if (generation.filter.mightContain(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void recordSeen(String messageId) {
+        if (!enabled) {
+            return;
+        }
+        rotateIfNeeded(System.currentTimeMillis());
+        generations.getFirst().filter.add(MessageIds.toKey(messageId));
+        dirty = true;
+    }
+
+    /**
+     * Save the filter if it changed since the last save
+     */
+    @Scheduled(fixedDelayString = "${notifysync.dedup.seen-filter.save-interval-seconds:300}000")
+    public void saveIfChanged() {
+        if (enabled && dirty) {
+            save();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        saveIfChanged();
+    }
+
+    private void rotateIfNeeded(long now) {
+        Generation current = generations.peekFirst();
+        if (current != null && now - current.startedAt < TimeUnit.DAYS.toMillis(generationDays)) {
+            return;
+        }
+
+        generations.addFirst(new Generation(now, new ScalableBloomFilter(falsePositiveRate, initialCapacity)));
+        while (generations.size() > Math.max(1, maxGenerations)) {
+            Generation dropped = generations.removeLast();
+            log.info("Dropped seen-message filter generation started at {} with ~{} IDs",
+                    dropped.startedAt, dropped.filter.size());
+        }
+    }
+
+    private void save() {
+        Path target = Paths.get(storageFile);
+        Path tempFile = target.resolveSibling(target.getFileName() + ".tmp");
+
+        synchronized (this) {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(generations.size());
+                for (Generation generation : generations) {
+                    out.writeLong(generation.startedAt);
+                    generation.filter.writeTo(out);
+                }
+            } catch (IOException e) {
+                log.error("Failed to save seen-message filter", e);
+                return;
+            }
+            dirty = false;
+        }
+
+        try {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Failed to save seen-message filter", e);
+            dirty = true;
+        }
+    }
+
+    private void read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a seen-message filter file");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported seen-message filter version " + version);
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long startedAt = in.readLong();
+            generations.addLast(new Generation(startedAt, ScalableBloomFilter.readFrom(in)));
+        }
+    }
+
+    private record Generation(long startedAt, ScalableBloomFilter filter) {
+    }
+}
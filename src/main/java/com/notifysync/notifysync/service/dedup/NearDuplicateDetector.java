@@ -0,0 +1,43 @@
+package com.notifysync.notifysync.service.dedup;
+
+import com.notifysync.notifysync.model.Email;
+
+/**
+ * Detects emails that are near-duplicates of recently notified ones, such as the
+ * same monitoring alert arriving as separate threads
+ */
+public interface NearDuplicateDetector {
+
+    /**
+     * Compute the content fingerprint of an email
+     *
+     * @param email The email
+     * @return The fingerprint
+     */
+    long fingerprint(Email email);
+
+    /**
+     * Check if a notification was recently sent for a near-identical email
+     *
+     * @param fingerprint The fingerprint from {@link #fingerprint(Email)}
+     * @return true if the notification should be suppressed
+     */
+    boolean isRecentDuplicate(long fingerprint);
+
+    /**
+     * Check if two fingerprints are close enough to count as the same email, for
+     * comparing against notifications that have not been recorded yet
+     *
+     * @return true if one would suppress the other
+     */
+    default boolean isNearDuplicate(long fingerprint, long other) {
+        return fingerprint == other;
+    }
+
+    /**
+     * Remember that a notification was sent for an email with this fingerprint
+     *
+     * @param fingerprint The fingerprint from {@link #fingerprint(Email)}
+     */
+    void recordNotified(long fingerprint);
+}
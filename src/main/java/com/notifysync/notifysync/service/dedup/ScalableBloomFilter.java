@@ -0,0 +1,174 @@
+package com.notifysync.notifysync.service.dedup;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bloom filter over 64-bit keys that grows by adding slices as it fills up.
+ * <p>
+ * Each slice holds twice as many keys as the previous one at half the false-positive
+ * rate, so the compound rate stays below the configured target however many keys are
+ * added (Almeida et al., "Scalable Bloom Filters").
+ */
+public class ScalableBloomFilter {
+
+    private static final double TIGHTENING_RATIO = 0.5;
+    private static final int GROWTH_FACTOR = 2;
+
+    private final double falsePositiveRate;
+    private final long initialCapacity;
+    private final List<Slice> slices = new ArrayList<>();
+
+    /**
+     * @param falsePositiveRate Target false-positive rate for the whole filter
+     * @param initialCapacity Keys the first slice holds before another is added
+     */
+    public ScalableBloomFilter(double falsePositiveRate, long initialCapacity) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False-positive rate must be between 0 and 1");
+        }
+        this.falsePositiveRate = falsePositiveRate;
+        this.initialCapacity = Math.max(1, initialCapacity);
+    }
+
+    public void add(long key) {
+        if (mightContain(key)) {
+            return;
+        }
+        if (slices.isEmpty() || slices.get(slices.size() - 1).isFull()) {
+            int index = slices.size();
+            long capacity = initialCapacity * (long) Math.pow(GROWTH_FACTOR, index);
+            double rate = falsePositiveRate * (1 - TIGHTENING_RATIO) * Math.pow(TIGHTENING_RATIO, index);
+            slices.add(Slice.create(capacity, rate));
+        }
+        slices.get(slices.size() - 1).add(key);
+    }
+
+    /**
+     * @return false if the key was definitely never added
+     */
+    public boolean mightContain(long key) {
+        for (int i = slices.size() - 1; i >= 0; i--) {
+            if (slices.get(i).mightContain(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Number of distinct keys added, give or take false positives at insertion
+     */
+    public long size() {
+        long size = 0;
+        for (Slice slice : slices) {
+            size += slice.count;
+        }
+        return size;
+    }
+
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (Slice slice : slices) {
+            bytes += (long) slice.bits.length * Long.BYTES;
+        }
+        return bytes;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeDouble(falsePositiveRate);
+        out.writeLong(initialCapacity);
+        out.writeInt(slices.size());
+        for (Slice slice : slices) {
+            out.writeLong(slice.capacity);
+            out.writeLong(slice.count);
+            out.writeInt(slice.hashCount);
+            out.writeInt(slice.bits.length);
+            for (long word : slice.bits) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    public static ScalableBloomFilter readFrom(DataInputStream in) throws IOException {
+        ScalableBloomFilter filter = new ScalableBloomFilter(in.readDouble(), in.readLong());
+        int sliceCount = in.readInt();
+        for (int i = 0; i < sliceCount; i++) {
+            long capacity = in.readLong();
+            long count = in.readLong();
+            int hashCount = in.readInt();
+            int words = in.readInt();
+            if (words <= 0 || hashCount <= 0) {
+                throw new IOException("Corrupt Bloom filter slice");
+            }
+            long[] bits = new long[words];
+            for (int w = 0; w < words; w++) {
+                bits[w] = in.readLong();
+            }
+            filter.slices.add(new Slice(bits, hashCount, capacity, count));
+        }
+        return filter;
+    }
+
+    private static final class Slice {
+
+        private final long[] bits;
+        private final long bitCount;
+        private final int hashCount;
+        private final long capacity;
+        private long count;
+
+        private Slice(long[] bits, int hashCount, long capacity, long count) {
+            this.bits = bits;
+            this.bitCount = (long) bits.length * Long.SIZE;
+            this.hashCount = hashCount;
+            this.capacity = capacity;
+            this.count = count;
+        }
+
+        static Slice create(long capacity, double rate) {
+            // Optimal sizing: m = -n ln p / (ln 2)^2 bits and k = (m / n) ln 2 hash functions
+            double ln2 = Math.log(2);
+            long bitCount = (long) Math.ceil(-capacity * Math.log(rate) / (ln2 * ln2));
+            int words = (int) Math.min(Integer.MAX_VALUE - 8, (bitCount + Long.SIZE - 1) / Long.SIZE);
+            int hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * ln2));
+            return new Slice(new long[words], hashCount, capacity, 0);
+        }
+
+        boolean isFull() {
+            return count >= capacity;
+        }
+
+        void add(long key) {
+            long h1 = mix(key);
+            long h2 = mix(h1) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            count++;
+        }
+
+        boolean mightContain(long key) {
+            long h1 = mix(key);
+            long h2 = mix(h1) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long mix(long value) {
+            // splitmix64 finalizer
+            value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+            value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+            return value ^ (value >>> 31);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.notifysync.notifysync.service.dedup;
+
+/**
+ * Long-term, approximate memory of every message ID ever processed, kept long after
+ * the exact tracking store has expired them
+ */
+public interface SeenMessageFilter {
+
+    /**
+     * Check if a message might have been processed before
+     *
+     * @param messageId The Gmail message ID
+     * @return false if the message was definitely never processed; true if it
+     *         probably was, with a small configurable false-positive rate
+     */
+    boolean mightHaveSeen(String messageId);
+
+    /**
+     * Remember that a message was processed
+     *
+     * @param messageId The Gmail message ID
+     */
+    void recordSeen(String messageId);
+}
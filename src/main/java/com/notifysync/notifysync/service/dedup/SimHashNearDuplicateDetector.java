@@ -0,0 +1,217 @@
+package com.notifysync.notifysync.service.dedup;
+
+import com.notifysync.notifysync.model.Email;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Near-duplicate detection with 64-bit SimHash fingerprints.
+ * <p>
+ * The fingerprint is built from word and word-pair shingles of the subject and the
+ * start of the body (Gmail's snippet when available), with digits folded together so alerts that differ only in
+ * counters or timestamps collide. Recent fingerprints are split into
+ * {@code maxHammingDistance + 1} bands; any two fingerprints within the distance
+ * agree on at least one band, so only emails sharing a band are compared.
+ */
+@Service
+@Slf4j
+public class SimHashNearDuplicateDetector implements NearDuplicateDetector {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    @Value("${notifysync.dedup.near-duplicate.enabled:true}")
+    private boolean enabled;
+
+    @Value("${notifysync.dedup.near-duplicate.max-hamming-distance:3}")
+    private int maxHammingDistance;
+
+    @Value("${notifysync.dedup.near-duplicate.window-hours:24}")
+    private int windowHours;
+
+    @Value("${notifysync.dedup.near-duplicate.max-body-chars:4096}")
+    private int maxBodyChars;
+
+    private int bandCount;
+    private int bandBits;
+
+    // Band key (band index in the top byte, band bits below) -> fingerprints in that band
+    private final Map<Long, List<Entry>> bands = new HashMap<>();
+    private final Deque<Entry> byTime = new ArrayDeque<>();
+
+    @PostConstruct
+    public void init() {
+        if (maxHammingDistance < 0 || maxHammingDistance > 7) {
+            throw new IllegalArgumentException(
+                    "notifysync.dedup.near-duplicate.max-hamming-distance must be between 0 and 7");
+        }
+        bandCount = maxHammingDistance + 1;
+        bandBits = Long.SIZE / bandCount;
+        log.info("Near-duplicate detection {} (distance <= {}, {} bands, window {}h)",
+                enabled ? "enabled" : "disabled", maxHammingDistance, bandCount, windowHours);
+    }
+
+    @Override
+    public long fingerprint(Email email) {
+        int[] votes = new int[Long.SIZE];
+        long previousToken = addTokens(email.getSubject(), Integer.MAX_VALUE, votes, 0L);
+        // Prefer the snippet so the fingerprint is the same whether or not the body was fetched
+        String text = email.getSnippet() != null ? email.getSnippet() : email.getBody();
+        addTokens(text, maxBodyChars, votes, previousToken);
+
+        long fingerprint = 0L;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (votes[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    @Override
+    public synchronized boolean isRecentDuplicate(long fingerprint) {
+        if (!enabled) {
+            return false;
+        }
+        evictExpired(System.currentTimeMillis());
+
+        for (int band = 0; band < bandCount; band++) {
+            List<Entry> candidates = bands.get(bandKey(fingerprint, band));
+            if (candidates == null) continue;
+
+            for (Entry candidate : candidates) {
+                int distance = Long.bitCount(candidate.fingerprint ^ fingerprint);
+                if (distance <= maxHammingDistance) {
+                    log.debug("Fingerprint {} is within distance {} of a recent notification",
+                            Long.toHexString(fingerprint), distance);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isNearDuplicate(long fingerprint, long other) {
+        return enabled && Long.bitCount(fingerprint ^ other) <= maxHammingDistance;
+    }
+
+    @Override
+    public synchronized void recordNotified(long fingerprint) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        evictExpired(now);
+
+        Entry entry = new Entry(fingerprint, now);
+        byTime.addLast(entry);
+        for (int band = 0; band < bandCount; band++) {
+            bands.computeIfAbsent(bandKey(fingerprint, band), k -> new ArrayList<>(2)).add(entry);
+        }
+    }
+
+    private void evictExpired(long now) {
+        long cutoff = now - TimeUnit.HOURS.toMillis(windowHours);
+        while (!byTime.isEmpty() && byTime.peekFirst().recordedAt < cutoff) {
+            Entry expired = byTime.pollFirst();
+            for (int band = 0; band < bandCount; band++) {
+                long key = bandKey(expired.fingerprint, band);
+                List<Entry> bucket = bands.get(key);
+                if (bucket != null) {
+                    bucket.remove(expired);
+                    if (bucket.isEmpty()) {
+                        bands.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private long bandKey(long fingerprint, int band) {
+        // The last band absorbs the bits left over when 64 does not divide evenly
+        int shift = band * bandBits;
+        int width = band == bandCount - 1 ? Long.SIZE - shift : bandBits;
+        long bits = (fingerprint >>> shift) & (width == Long.SIZE ? -1L : (1L << width) - 1);
+        return ((long) band << 56) ^ bits;
+    }
+
+    /**
+     * Adds word and word-pair shingles of {@code text} to the SimHash votes, skipping
+     * HTML markup. Returns the hash of the last word so shingles continue across fields.
+     */
+    private static long addTokens(String text, int maxChars, int[] votes, long previousToken) {
+        if (text == null || text.isEmpty()) {
+            return previousToken;
+        }
+
+        int end = Math.min(text.length(), maxChars);
+        long token = FNV_OFFSET;
+        boolean inToken = false;
+        boolean inTag = false;
+
+        for (int i = 0; i <= end; i++) {
+            char c = i < end ? text.charAt(i) : ' ';
+            if (inTag) {
+                inTag = c != '>';
+                continue;
+            }
+            if (c == '<') {
+                inTag = true;
+                c = ' ';
+            }
+
+            if (Character.isLetterOrDigit(c)) {
+                // Fold all digits together so changing numbers do not change the fingerprint
+                char normalised = Character.isDigit(c) ? '0' : Character.toLowerCase(c);
+                token = (token ^ normalised) * FNV_PRIME;
+                inToken = true;
+            } else if (inToken) {
+                long tokenHash = mix(token);
+                vote(votes, tokenHash);
+                if (previousToken != 0L) {
+                    vote(votes, mix(previousToken * 31 + tokenHash));
+                }
+                previousToken = tokenHash;
+                token = FNV_OFFSET;
+                inToken = false;
+            }
+        }
+        return previousToken;
+    }
+
+    private static void vote(int[] votes, long hash) {
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            votes[bit] += ((hash >>> bit) & 1L) != 0 ? 1 : -1;
+        }
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Entry {
+        private final long fingerprint;
+        private final long recordedAt;
+
+        Entry(long fingerprint, long recordedAt) {
+            this.fingerprint = fingerprint;
+            this.recordedAt = recordedAt;
+        }
+    }
+}
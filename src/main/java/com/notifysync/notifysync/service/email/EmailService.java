@@ -5,5 +5,16 @@ import com.notifysync.notifysync.model.Email;
 import java.util.List;
 
 public interface EmailService {
+
+    /**
+     * Fetch recent emails with headers, labels and snippet only; the body is left null
+     */
     List<Email> fetchRecentEmails(int maxResults);
+
+    /**
+     * Fetch and decode the full body of an email fetched by {@link #fetchRecentEmails}
+     *
+     * @return true if the body was loaded
+     */
+    boolean loadBody(Email email);
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package com.notifysync.notifysync.service.email;
 import com.google.api.services.gmail.Gmail;
 import com.google.api.services.gmail.model.Label;
 import com.google.api.services.gmail.model.Message;
+import com.notifysync.notifysync.model.Email;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
@@ -61,22 +62,10 @@ public class GmailCategoryService {
             }
 
             // Get the message and its label IDs
-            Message message = gmail.users().messages().get(USER_ID, messageId).execute();
-            List<String> labelIds = message.getLabelIds();
-
-            if (labelIds == null || labelIds.isEmpty()) {
-                return GmailCategory.UNKNOWN;
-            }
-
-            // Look for category labels
-            for (String labelId : labelIds) {
-                String labelName = labelIdToNameMap.get(labelId);
-                if (labelName != null && labelName.startsWith(CATEGORY_PREFIX)) {
-                    return GmailCategory.fromLabelName(labelName);
-                }
-            }
-
-            return GmailCategory.UNKNOWN;
+            Message message = gmail.users().messages().get(USER_ID, messageId)
+                    .setFormat("minimal")
+                    .execute();
+            return getCategoryFromLabels(message.getLabelIds());
 
         } catch (IOException e) {
             log.error("Error getting Gmail category for message {}: {}", messageId, e.getMessage());
@@ -84,6 +73,33 @@ public class GmailCategoryService {
         }
     }
 
+    /**
+     * Gets the Gmail category from label IDs already fetched with the message
+     *
+     * @param labelIds The message's label IDs
+     * @return The Gmail category
+     */
+    public GmailCategory getCategoryFromLabels(List<String> labelIds) {
+        if (labelIds == null || labelIds.isEmpty()) {
+            return GmailCategory.UNKNOWN;
+        }
+
+        // Ensure we have the label mappings
+        if (labelIdToNameMap == null) {
+            initLabelMap();
+        }
+
+        // Look for category labels
+        for (String labelId : labelIds) {
+            String labelName = labelIdToNameMap.getOrDefault(labelId, labelId);
+            if (labelName.startsWith(CATEGORY_PREFIX)) {
+                return GmailCategory.fromLabelName(labelName);
+            }
+        }
+
+        return GmailCategory.UNKNOWN;
+    }
+
     /**
      * Checks if a message belongs to one of the allowed categories (PRIMARY or UPDATES)
      */
@@ -92,6 +108,18 @@ public class GmailCategoryService {
         return category == GmailCategory.PRIMARY || category == GmailCategory.UPDATES;
     }
 
+    /**
+     * Checks if an email belongs to one of the allowed categories (PRIMARY or UPDATES),
+     * using the labels fetched with it when available instead of another API call
+     */
+    public boolean isInAllowedCategory(Email email) {
+        if (email.getLabelIds() == null) {
+            return isInAllowedCategory(email.getId());
+        }
+        GmailCategory category = getCategoryFromLabels(email.getLabelIds());
+        return category == GmailCategory.PRIMARY || category == GmailCategory.UPDATES;
+    }
+
     /**
      * Initialize the label ID to name mapping
      */
@@ -22,6 +22,7 @@ public class GmailService implements EmailService {
 
     private final Gmail gmail;
     private static final String USER_ID = "me";
+    private static final List<String> METADATA_HEADERS = List.of("Subject", "From", "Date", "Delivered-To", "To");
 
     @Autowired
     public GmailService(@Qualifier("gmailApiService") Gmail gmail) {
@@ -48,8 +49,12 @@ public class GmailService implements EmailService {
             // Process each message
             for (Message message : messages) {
                 try {
-                    Message fullMessage = gmail.users().messages().get(USER_ID, message.getId()).execute();
-                    emails.add(convertToEmail(fullMessage));
+                    // Headers, labels and snippet are enough for most decisions; the body is fetched on demand
+                    Message metadata = gmail.users().messages().get(USER_ID, message.getId())
+                            .setFormat("metadata")
+                            .setMetadataHeaders(METADATA_HEADERS)
+                            .execute();
+                    emails.add(convertToEmail(metadata));
                 } catch (Exception e) {
                     log.error("Error processing email with ID: {}", message.getId(), e);
                 }
@@ -62,11 +67,26 @@ public class GmailService implements EmailService {
         return emails;
     }
 
+    @Override
+    public boolean loadBody(Email email) {
+        try {
+            Message fullMessage = gmail.users().messages().get(USER_ID, email.getId())
+                    .setFormat("full")
+                    .execute();
+            email.setBody(fullMessage.getPayload() != null ? getTextFromMessagePart(fullMessage.getPayload()) : "");
+            return true;
+        } catch (IOException e) {
+            log.error("Failed to fetch body of email with ID: {}", email.getId(), e);
+            return false;
+        }
+    }
+
     private Email convertToEmail(Message message) {
         String subject = "";
         String sender = "";
         String senderEmail = "";
-        String body = "";
+        String deliveredTo = null;
+        String to = null;
         LocalDateTime receivedAt = null;
 
         // Extract the thread ID
@@ -89,6 +109,17 @@ public class GmailService implements EmailService {
                             sender = from;
                         }
                         break;
+                    case "Delivered-To":
+                        if (deliveredTo == null) {
+                            deliveredTo = extractAddress(header.getValue());
+                        }
+                        break;
+                    case "To":
+                        if (to == null) {
+                            // Only the first address of the list
+                            to = extractAddress(header.getValue().split(",")[0]);
+                        }
+                        break;
                     case "Date":
                         try {
                             // Use a proper date parser instead of the deprecated constructor
@@ -105,24 +136,27 @@ public class GmailService implements EmailService {
             }
         }
 
-        // Get body
-        if (message.getPayload() != null) {
-            body = getTextFromMessagePart(message.getPayload());
-        }
-
-        // Build email with thread ID included
+        // Build email with thread ID included; the body is loaded later only if needed
         return Email.builder()
                 .id(message.getId())
                 .threadId(threadId)
                 .subject(subject)
                 .sender(sender)
                 .senderEmail(senderEmail)
-                .body(body)
+                .mailbox(deliveredTo != null ? deliveredTo : to)
+                .snippet(message.getSnippet())
+                .labelIds(message.getLabelIds())
                 .receivedAt(receivedAt != null ? receivedAt : LocalDateTime.now())
                 .isImportant(false) // Will be determined by the filter service
                 .build();
     }
 
+    private static String extractAddress(String value) {
+        int start = value.indexOf('<');
+        int end = value.indexOf('>', start + 1);
+        return start >= 0 && end > start ? value.substring(start + 1, end).trim() : value.trim();
+    }
+
     private String getTextFromMessagePart(MessagePart part) {
         if (part.getBody() != null && part.getBody().getData() != null) {
             return decodeBase64(part.getBody().getData());
@@ -0,0 +1,85 @@
+package com.notifysync.notifysync.service.filter;
+
+import com.notifysync.notifysync.model.Email;
+import com.notifysync.notifysync.model.Notification;
+import com.notifysync.notifysync.service.email.EmailService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs classification in tiers: headers, labels and snippet first, and only when
+ * that is undecided fetches the full body and applies the body rules.
+ * Keeps per-tier counters so the number of body downloads saved can be reported.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ClassificationCascade {
+
+    private final EmailFilterService emailFilterService;
+    private final EmailService emailService;
+
+    private final AtomicLong headerTierImportant = new AtomicLong();
+    private final AtomicLong headerTierNotImportant = new AtomicLong();
+    private final AtomicLong bodyTierImportant = new AtomicLong();
+    private final AtomicLong bodyTierNotImportant = new AtomicLong();
+    private final AtomicLong bodyFetchFailures = new AtomicLong();
+
+    /**
+     * Check if an email is important, fetching its body only if the header tier is undecided
+     */
+    public boolean isImportant(Email email) {
+        FilterDecision decision = emailFilterService.classifyWithoutBody(email);
+        if (decision == FilterDecision.IMPORTANT) {
+            headerTierImportant.incrementAndGet();
+            return true;
+        }
+        if (decision == FilterDecision.NOT_IMPORTANT) {
+            headerTierNotImportant.incrementAndGet();
+            return false;
+        }
+
+        if (email.getBody() == null && !emailService.loadBody(email)) {
+            // Classify on what we have; the body rules will simply not match
+            bodyFetchFailures.incrementAndGet();
+        }
+
+        boolean important = emailFilterService.classifyWithBody(email);
+        (important ? bodyTierImportant : bodyTierNotImportant).incrementAndGet();
+        log.debug("Email '{}' needed the body tier, important={}", email.getSubject(), important);
+        return important;
+    }
+
+    /**
+     * How urgently to notify about an email found important
+     */
+    public Notification.NotificationPriority priorityOf(Email email) {
+        return emailFilterService.priorityOf(email);
+    }
+
+    /**
+     * Get per-tier decision counts and hit rates since startup
+     */
+    public Map<String, Object> getStats() {
+        long headerDecided = headerTierImportant.get() + headerTierNotImportant.get();
+        long bodyDecided = bodyTierImportant.get() + bodyTierNotImportant.get();
+        long total = headerDecided + bodyDecided;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("classified", total);
+        stats.put("headerTierImportant", headerTierImportant.get());
+        stats.put("headerTierNotImportant", headerTierNotImportant.get());
+        stats.put("headerTierHitRate", total == 0 ? 0.0 : (double) headerDecided / total);
+        stats.put("bodyTierImportant", bodyTierImportant.get());
+        stats.put("bodyTierNotImportant", bodyTierNotImportant.get());
+        stats.put("bodyTierHitRate", total == 0 ? 0.0 : (double) bodyDecided / total);
+        stats.put("bodyFetchesSaved", headerDecided);
+        stats.put("bodyFetchFailures", bodyFetchFailures.get());
+        return stats;
+    }
+}
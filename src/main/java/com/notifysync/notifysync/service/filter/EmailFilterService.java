@@ -1,7 +1,32 @@
 package com.notifysync.notifysync.service.filter;
 
 import com.notifysync.notifysync.model.Email;
+import com.notifysync.notifysync.model.Notification;
 
 public interface EmailFilterService {
     boolean isImportantEmail(Email email);
+
+    /**
+     * Classify an email using only its headers, labels and snippet, so the full body
+     * only has to be fetched when this returns {@link FilterDecision#UNDECIDED}
+     */
+    default FilterDecision classifyWithoutBody(Email email) {
+        return FilterDecision.UNDECIDED;
+    }
+
+    /**
+     * Apply only the body rules to an email {@link #classifyWithoutBody} left
+     * {@link FilterDecision#UNDECIDED}, without repeating the header checks
+     */
+    default boolean classifyWithBody(Email email) {
+        return isImportantEmail(email);
+    }
+
+    /**
+     * How urgently to notify about an email this filter found important. Only headers,
+     * labels and snippet are used, so it is cheap to call after classification.
+     */
+    default Notification.NotificationPriority priorityOf(Email email) {
+        return Notification.NotificationPriority.HIGH;
+    }
 }
@@ -2,6 +2,8 @@ package com.notifysync.notifysync.service.filter;
 
 
 import com.notifysync.notifysync.model.Email;
+import com.notifysync.notifysync.model.Notification;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -26,11 +28,42 @@ public class EmailFilterServiceImpl implements EmailFilterService {
     @Value("${notifysync.filter.recency-hours:24}")
     private int recencyHours;
 
+    @Value("${notifysync.filter.body-scan-limit-chars:16384}")
+    private int bodyScanLimitChars;
+
+    private KeywordScanner keywordScanner;
+
+    @PostConstruct
+    public void init() {
+        keywordScanner = new KeywordScanner(importantKeywords);
+    }
+
     @Override
     public boolean isImportantEmail(Email email) {
+        FilterDecision decision = classifyWithoutBody(email);
+        if (decision != FilterDecision.UNDECIDED) {
+            return decision == FilterDecision.IMPORTANT;
+        }
+        return classifyWithBody(email);
+    }
+
+    @Override
+    public boolean classifyWithBody(Email email) {
+        // Check if the start of the body contains important keywords, ignoring markup
+        if (containsImportantKeywords(email.getBody(), bodyScanLimitChars, true)) {
+            log.debug("Email body contains important keywords");
+            return true;
+        }
+
+        log.debug("Email is not important");
+        return false;
+    }
+
+    @Override
+    public FilterDecision classifyWithoutBody(Email email) {
         if (email == null) {
             log.debug("Email is null");
-            return false;
+            return FilterDecision.NOT_IMPORTANT;
         }
 
         log.debug("Checking importance for email: Subject='{}', From='{}'",
@@ -42,29 +75,42 @@ public class EmailFilterServiceImpl implements EmailFilterService {
         if (email.getReceivedAt() == null ||
                 ChronoUnit.HOURS.between(email.getReceivedAt(), LocalDateTime.now()) > recencyHours) {
             log.debug("Email is too old or has no received date");
-            return false;
+            return FilterDecision.NOT_IMPORTANT;
         }
 
         // Check if sender domain is important
         if (isFromImportantDomain(email.getSenderEmail())) {
             log.debug("Email from {} is from an important domain", email.getSenderEmail());
-            return true;
+            return FilterDecision.IMPORTANT;
         }
 
         // Check if the subject contains important keywords
-        if (containsImportantKeywords(email.getSubject())) {
+        if (containsImportantKeywords(email.getSubject(), Integer.MAX_VALUE, false)) {
             log.debug("Email subject '{}' contains important keywords", email.getSubject());
-            return true;
+            return FilterDecision.IMPORTANT;
         }
 
-        // Check if the body contains important keywords
-        if (containsImportantKeywords(email.getBody())) {
-            log.debug("Email body contains important keywords");
-            return true;
+        // The snippet is the start of the body, so a keyword there settles the body check early
+        if (containsImportantKeywords(email.getSnippet(), Integer.MAX_VALUE, false)) {
+            log.debug("Email snippet contains important keywords");
+            return FilterDecision.IMPORTANT;
         }
 
-        log.debug("Email is not important");
-        return false;
+        // Only the body keyword check is left, which cannot match without keywords
+        return keywordScanner.isEmpty() ? FilterDecision.NOT_IMPORTANT : FilterDecision.UNDECIDED;
+    }
+
+    @Override
+    public Notification.NotificationPriority priorityOf(Email email) {
+        // A keyword in the subject is what the sender chose to lead with; one found only
+        // in the snippet or body is incidental
+        if (containsImportantKeywords(email.getSubject(), Integer.MAX_VALUE, false)) {
+            return Notification.NotificationPriority.HIGH;
+        }
+        if (isFromImportantDomain(email.getSenderEmail())) {
+            return Notification.NotificationPriority.MEDIUM;
+        }
+        return Notification.NotificationPriority.LOW;
     }
 
     private boolean isFromImportantDomain(String emailAddress) {
@@ -90,25 +136,15 @@ public class EmailFilterServiceImpl implements EmailFilterService {
         return false;
     }
 
-    private boolean containsImportantKeywords(String content) {
-        if (content == null || content.isBlank() || importantKeywords == null || importantKeywords.isEmpty()) {
+    private boolean containsImportantKeywords(String content, int maxChars, boolean skipMarkup) {
+        if (content == null || content.isBlank() || keywordScanner.isEmpty()) {
             log.debug("Content is null/blank or no important keywords configured");
             return false;
         }
 
-        String lowerCaseContent = content.toLowerCase(Locale.ROOT);
-        log.debug("Checking if content contains any important keywords: {}", importantKeywords);
-
-        for (String keyword : importantKeywords) {
-            if (keyword == null || keyword.isBlank()) continue;
-
-            String lowerCaseKeyword = keyword.toLowerCase(Locale.ROOT).trim();
-            boolean contains = lowerCaseContent.contains(lowerCaseKeyword);
-
-            log.debug("Checking keyword '{}' in content: {}", lowerCaseKeyword, contains);
-            if (contains) return true;
-        }
-
-        return false;
+        // Scan the original text in place rather than lower-casing a copy of it
+        String keyword = keywordScanner.findFirst(content, maxChars, skipMarkup);
+        log.debug("Checked content for important keywords {}: {}", importantKeywords, keyword);
+        return keyword != null;
     }
 }
@@ -1,11 +1,15 @@
 package com.notifysync.notifysync.service.filter;
 
 import com.notifysync.notifysync.model.Email;
+import com.notifysync.notifysync.model.Notification;
 import com.notifysync.notifysync.service.email.GmailCategoryService;
 import com.notifysync.notifysync.service.tracking.EmailTrackingService;
+import com.notifysync.notifysync.service.tracking.SenderFeedbackStats;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 
@@ -19,6 +23,7 @@ import java.util.regex.Pattern;
 @RequiredArgsConstructor
 @Slf4j
 @Primary
+@ConditionalOnProperty(name = "notifysync.filter.mode", havingValue = "enhanced", matchIfMissing = true)
 public class EnhancedEmailFilterService implements EmailFilterService {
 
     private final GmailCategoryService gmailCategoryService;
@@ -33,72 +38,103 @@ public class EnhancedEmailFilterService implements EmailFilterService {
     @Value("${notifysync.filter.recency-hours:24}")
     private int recencyHours;
 
+    @Value("${notifysync.filter.body-scan-limit-chars:16384}")
+    private int bodyScanLimitChars;
+
+    private KeywordScanner keywordScanner;
+
     private static final Pattern URGENT_PATTERN = Pattern.compile(
             "\\b(urgent|immediate|asap|important|critical|priority|alert|action\\s+required)\\b",
             Pattern.CASE_INSENSITIVE);
 
+    private static final String GMAIL_IMPORTANT_LABEL = "IMPORTANT";
+
     private static final Pattern REPLY_PATTERN = Pattern.compile(
             "^(re:|fw:|fwd:|回复:|转发:)",
             Pattern.CASE_INSENSITIVE);
 
+    @PostConstruct
+    public void init() {
+        keywordScanner = new KeywordScanner(importantKeywords);
+    }
+
     @Override
     public boolean isImportantEmail(Email email) {
+        FilterDecision decision = classifyWithoutBody(email);
+        if (decision != FilterDecision.UNDECIDED) {
+            return decision == FilterDecision.IMPORTANT;
+        }
+        return classifyWithBody(email);
+    }
+
+    @Override
+    public boolean classifyWithBody(Email email) {
+        // Check if the start of the body contains important keywords, ignoring markup
+        if (containsImportantKeywords(email.getBody(), bodyScanLimitChars, true)) {
+            log.debug("Email body contains important keywords");
+            return true;
+        }
+
+        log.debug("Email is not important");
+        return false;
+    }
+
+    @Override
+    public FilterDecision classifyWithoutBody(Email email) {
         if (email == null) {
             log.debug("Email is null");
-            return false;
+            return FilterDecision.NOT_IMPORTANT;
         }
 
         log.debug("Checking importance for email: Subject='{}', From='{}'",
                 email.getSubject(), email.getSenderEmail());
 
         // Check if email is in allowed category (PRIMARY or UPDATES)
-        if (gmailCategoryService.isInAllowedCategory(email.getId())) {
+        if (gmailCategoryService.isInAllowedCategory(email)) {
             log.debug("Email is not in PRIMARY or UPDATES category");
-            return false;
+            return FilterDecision.NOT_IMPORTANT;
         }
 
         // Check if email is recent
         if (email.getReceivedAt() == null ||
                 ChronoUnit.HOURS.between(email.getReceivedAt(), LocalDateTime.now()) > recencyHours) {
             log.debug("Email is too old or has no received date");
-            return false;
+            return FilterDecision.NOT_IMPORTANT;
         }
 
         // Check for urgent subject patterns
         if (email.getSubject() != null && URGENT_PATTERN.matcher(email.getSubject()).find()) {
             log.debug("Email subject contains urgent keywords");
-            return true;
+            return FilterDecision.IMPORTANT;
         }
 
         // Check if sender domain is important
         if (isFromImportantDomain(email.getSenderEmail())) {
             log.debug("Email from {} is from an important domain", email.getSenderEmail());
-            return true;
+            return FilterDecision.IMPORTANT;
         }
 
         // Check if the subject contains important keywords
-        if (containsImportantKeywords(email.getSubject())) {
+        if (containsImportantKeywords(email.getSubject(), Integer.MAX_VALUE, false)) {
             log.debug("Email subject '{}' contains important keywords", email.getSubject());
-            return true;
+            return FilterDecision.IMPORTANT;
         }
 
-        // Check if the body contains important keywords
-        if (containsImportantKeywords(email.getBody())) {
-            log.debug("Email body contains important keywords");
-            return true;
+        // The snippet is the start of the body, so a keyword there settles the body check early
+        if (containsImportantKeywords(email.getSnippet(), Integer.MAX_VALUE, false)) {
+            log.debug("Email snippet contains important keywords");
+            return FilterDecision.IMPORTANT;
         }
 
         // Check sender's relevance history
         if (email.getSenderEmail() != null && !email.getSenderEmail().isEmpty()) {
-            List<Object> feedbackStats = emailTrackingService.getRecentFeedbackForSender(email.getSenderEmail());
-            int positiveCount = (int) feedbackStats.get(0);
-            int totalCount = (int) feedbackStats.get(1);
+            SenderFeedbackStats feedbackStats = emailTrackingService.getRecentFeedbackForSender(email.getSenderEmail());
 
-            if (totalCount > 0) {
-                double relevanceRate = (double) positiveCount / totalCount;
+            if (feedbackStats.totalCount() > 0) {
+                double relevanceRate = feedbackStats.relevanceRate();
                 if (relevanceRate > 0.7) {
                     log.debug("Sender has high relevance history: {}", relevanceRate);
-                    return true;
+                    return FilterDecision.IMPORTANT;
                 }
             }
         }
@@ -107,12 +143,26 @@ public class EnhancedEmailFilterService implements EmailFilterService {
         if (email.getThreadId() != null && !email.getThreadId().isEmpty()) {
             if (REPLY_PATTERN.matcher(email.getSubject() != null ? email.getSubject() : "").find()) {
                 log.debug("Email is a reply which might be important");
-                return true;
+                return FilterDecision.IMPORTANT;
             }
         }
 
-        log.debug("Email is not important");
-        return false;
+        // Only the body keyword check is left, which cannot match without keywords
+        return keywordScanner.isEmpty() ? FilterDecision.NOT_IMPORTANT : FilterDecision.UNDECIDED;
+    }
+
+    @Override
+    public Notification.NotificationPriority priorityOf(Email email) {
+        if (email.getSubject() != null && URGENT_PATTERN.matcher(email.getSubject()).find()) {
+            return Notification.NotificationPriority.HIGH;
+        }
+        if (isFromImportantDomain(email.getSenderEmail()) ||
+                containsImportantKeywords(email.getSubject(), Integer.MAX_VALUE, false) ||
+                (email.getLabelIds() != null && email.getLabelIds().contains(GMAIL_IMPORTANT_LABEL))) {
+            return Notification.NotificationPriority.MEDIUM;
+        }
+        // Important only through the snippet, body, sender history or a reply
+        return Notification.NotificationPriority.LOW;
     }
 
     private boolean isFromImportantDomain(String emailAddress) {
@@ -138,25 +188,15 @@ public class EnhancedEmailFilterService implements EmailFilterService {
         return false;
     }
 
-    private boolean containsImportantKeywords(String content) {
-        if (content == null || content.isBlank() || importantKeywords == null || importantKeywords.isEmpty()) {
+    private boolean containsImportantKeywords(String content, int maxChars, boolean skipMarkup) {
+        if (content == null || content.isBlank() || keywordScanner.isEmpty()) {
             log.debug("Content is null/blank or no important keywords configured");
             return false;
         }
 
-        String lowerCaseContent = content.toLowerCase(Locale.ROOT);
-        log.debug("Checking if content contains any important keywords: {}", importantKeywords);
-
-        for (String keyword : importantKeywords) {
-            if (keyword == null || keyword.isBlank()) continue;
-
-            String lowerCaseKeyword = keyword.toLowerCase(Locale.ROOT).trim();
-            boolean contains = lowerCaseContent.contains(lowerCaseKeyword);
-
-            log.debug("Checking keyword '{}' in content: {}", lowerCaseKeyword, contains);
-            if (contains) return true;
-        }
-
-        return false;
+        // Scan the original text in place rather than lower-casing a copy of it
+        String keyword = keywordScanner.findFirst(content, maxChars, skipMarkup);
+        log.debug("Checked content for important keywords {}: {}", importantKeywords, keyword);
+        return keyword != null;
     }
 }
\ No newline at end of file
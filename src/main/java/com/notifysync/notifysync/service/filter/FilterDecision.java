@@ -0,0 +1,11 @@
+package com.notifysync.notifysync.service.filter;
+
+/**
+ * Outcome of a classification tier
+ */
+public enum FilterDecision {
+    IMPORTANT,
+    NOT_IMPORTANT,
+    /** The tier could not decide; the next tier (e.g. body rules) has to run */
+    UNDECIDED
+}
@@ -0,0 +1,206 @@
+package com.notifysync.notifysync.service.filter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Logistic regression over hashed email features, trained online with SGD.
+ * <p>
+ * Features are hashed straight from the characters of the sender address, sender
+ * domain and subject tokens into a primitive weight array, so neither scoring nor
+ * training allocates. Scoring reads the weights without locking; a concurrent update
+ * can at worst make a single score use a mix of old and new weights.
+ */
+public class HashedLinearModel {
+
+    private static final int SNAPSHOT_MAGIC = 0x4E534C4D; // "NSLM"
+    private static final short SNAPSHOT_VERSION = 1;
+
+    // Namespace seeds keep identical strings in different fields apart
+    private static final int NS_SENDER = 0x01000193;
+    private static final int NS_DOMAIN = 0x05bd1e99;
+    private static final int NS_TOKEN = 0x2c1b3c6d;
+    private static final int NS_FLAG = 0x297a2d39;
+
+    private static final int FLAG_REPLY = 1;
+    private static final int FLAG_THREAD_CONTINUATION = 2;
+    private static final int FLAG_NO_SUBJECT = 3;
+
+    private final int dimensionBits;
+    private final int mask;
+    private final float[] weights;
+    private final float learningRate;
+    private volatile float bias;
+    private volatile long updateCount;
+
+    public HashedLinearModel(int dimensionBits, float learningRate) {
+        if (dimensionBits < 4 || dimensionBits > 28) {
+            throw new IllegalArgumentException("dimensionBits must be between 4 and 28: " + dimensionBits);
+        }
+        this.dimensionBits = dimensionBits;
+        this.mask = (1 << dimensionBits) - 1;
+        this.weights = new float[1 << dimensionBits];
+        this.learningRate = learningRate;
+    }
+
+    /**
+     * Scores an email
+     *
+     * @return The probability (0..1) that the user considers the email relevant
+     */
+    public float score(String senderEmail, String subject, boolean reply, boolean threadContinuation) {
+        return sigmoid(bias + visit(senderEmail, subject, reply, threadContinuation, 0f));
+    }
+
+    /**
+     * Applies one SGD step for a labelled example
+     */
+    public synchronized void update(String senderEmail, String subject, boolean reply,
+                                    boolean threadContinuation, boolean relevant) {
+        float predicted = score(senderEmail, subject, reply, threadContinuation);
+        float step = learningRate * ((relevant ? 1f : 0f) - predicted);
+        visit(senderEmail, subject, reply, threadContinuation, step);
+        bias += step;
+        updateCount++;
+    }
+
+    public long getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * Sums the weights of every feature of the email, adding {@code step} to each
+     * weight on the way when training. Returns the sum before any update.
+     */
+    private float visit(String senderEmail, String subject, boolean reply,
+                        boolean threadContinuation, float step) {
+        float sum = 0f;
+
+        if (senderEmail != null && !senderEmail.isEmpty()) {
+            sum += touch(hashLowerCase(NS_SENDER, senderEmail, 0, senderEmail.length()), step);
+
+            int at = senderEmail.lastIndexOf('@');
+            if (at >= 0 && at < senderEmail.length() - 1) {
+                sum += touch(hashLowerCase(NS_DOMAIN, senderEmail, at + 1, senderEmail.length()), step);
+            }
+        }
+
+        if (subject != null && !subject.isEmpty()) {
+            int tokenStart = -1;
+            int length = subject.length();
+            for (int i = 0; i <= length; i++) {
+                boolean wordChar = i < length && Character.isLetterOrDigit(subject.charAt(i));
+                if (wordChar && tokenStart < 0) {
+                    tokenStart = i;
+                } else if (!wordChar && tokenStart >= 0) {
+                    sum += touch(hashLowerCase(NS_TOKEN, subject, tokenStart, i), step);
+                    tokenStart = -1;
+                }
+            }
+        } else {
+            sum += touch(mix(NS_FLAG + FLAG_NO_SUBJECT), step);
+        }
+
+        if (reply) {
+            sum += touch(mix(NS_FLAG + FLAG_REPLY), step);
+        }
+        if (threadContinuation) {
+            sum += touch(mix(NS_FLAG + FLAG_THREAD_CONTINUATION), step);
+        }
+
+        return sum;
+    }
+
+    private float touch(int hash, float step) {
+        int index = hash & mask;
+        float weight = weights[index];
+        if (step != 0f) {
+            weights[index] = weight + step;
+        }
+        return weight;
+    }
+
+    /**
+     * FNV-1a over the lower-cased characters of {@code text[from, to)}, finished with a mixer
+     */
+    private static int hashLowerCase(int seed, String text, int from, int to) {
+        int h = 0x811c9dc5 ^ seed;
+        for (int i = from; i < to; i++) {
+            h ^= Character.toLowerCase(text.charAt(i));
+            h *= 0x01000193;
+        }
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static float sigmoid(float x) {
+        return (float) (1.0 / (1.0 + Math.exp(-x)));
+    }
+
+    /**
+     * Writes a compact snapshot containing only the non-zero weights
+     */
+    public synchronized void writeSnapshot(DataOutputStream out) throws IOException {
+        int nonZero = 0;
+        for (float weight : weights) {
+            if (weight != 0f) nonZero++;
+        }
+
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeShort(SNAPSHOT_VERSION);
+        out.writeByte(dimensionBits);
+        out.writeLong(updateCount);
+        out.writeFloat(bias);
+        out.writeInt(nonZero);
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] != 0f) {
+                out.writeInt(i);
+                out.writeFloat(weights[i]);
+            }
+        }
+    }
+
+    /**
+     * Restores weights from a snapshot written by {@link #writeSnapshot}
+     *
+     * @throws IOException if the snapshot is corrupt or was written with a different dimension
+     */
+    public synchronized void readSnapshot(DataInputStream in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Not an importance model snapshot");
+        }
+        short version = in.readShort();
+        if (version != SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported importance model snapshot version: " + version);
+        }
+        int bits = in.readUnsignedByte();
+        if (bits != dimensionBits) {
+            throw new IOException("Snapshot dimension bits " + bits + " do not match configured " + dimensionBits);
+        }
+
+        long updates = in.readLong();
+        float snapshotBias = in.readFloat();
+        int nonZero = in.readInt();
+        float[] restored = new float[weights.length];
+        for (int i = 0; i < nonZero; i++) {
+            int index = in.readInt();
+            if (index < 0 || index >= restored.length) {
+                throw new IOException("Weight index out of range: " + index);
+            }
+            restored[index] = in.readFloat();
+        }
+
+        System.arraycopy(restored, 0, weights, 0, weights.length);
+        bias = snapshotBias;
+        updateCount = updates;
+    }
+}
@@ -0,0 +1,113 @@
+package com.notifysync.notifysync.service.filter;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Case-insensitive keyword search that works on the original text.
+ * <p>
+ * Keywords are normalised once up front; scanning uses region matching instead of
+ * lower-casing a copy of the content, can stop after a prefix of the text, and can
+ * skip HTML tags along with the contents of {@code <style>} and {@code <script>} blocks.
+ */
+public class KeywordScanner {
+
+    private final String[] keywords;
+    private final char[] firstLower;
+    private final char[] firstUpper;
+
+    public KeywordScanner(List<String> keywords) {
+        this.keywords = keywords == null ? new String[0] : keywords.stream()
+                .filter(Objects::nonNull)
+                .map(keyword -> keyword.trim().toLowerCase(Locale.ROOT))
+                .filter(keyword -> !keyword.isEmpty())
+                .distinct()
+                .toArray(String[]::new);
+
+        firstLower = new char[this.keywords.length];
+        firstUpper = new char[this.keywords.length];
+        for (int i = 0; i < this.keywords.length; i++) {
+            firstLower[i] = this.keywords[i].charAt(0);
+            firstUpper[i] = Character.toUpperCase(firstLower[i]);
+        }
+    }
+
+    public boolean isEmpty() {
+        return keywords.length == 0;
+    }
+
+    /**
+     * Check if the text contains any keyword
+     *
+     * @param text The text to scan
+     * @param maxChars Only the first {@code maxChars} characters are scanned
+     * @param skipMarkup Whether to ignore HTML tags, styles and scripts
+     * @return The first keyword found, or null if none is present
+     */
+    public String findFirst(String text, int maxChars, boolean skipMarkup) {
+        if (text == null || keywords.length == 0) {
+            return null;
+        }
+
+        int end = Math.min(text.length(), maxChars);
+        int i = 0;
+        while (i < end) {
+            char c = text.charAt(i);
+
+            if (skipMarkup && c == '<' && isTagStart(text, i + 1)) {
+                i = skipTag(text, i, end);
+                continue;
+            }
+
+            for (int k = 0; k < keywords.length; k++) {
+                if ((c == firstLower[k] || c == firstUpper[k]) &&
+                        text.regionMatches(true, i, keywords[k], 0, keywords[k].length())) {
+                    return keywords[k];
+                }
+            }
+            i++;
+        }
+        return null;
+    }
+
+    private static boolean isTagStart(String text, int index) {
+        if (index >= text.length()) {
+            return false;
+        }
+        char next = text.charAt(index);
+        return Character.isLetter(next) || next == '/' || next == '!';
+    }
+
+    /**
+     * Returns the index just past the tag starting at {@code start}, or past the
+     * matching closing tag for style and script blocks, never beyond {@code end}
+     */
+    private static int skipTag(String text, int start, int end) {
+        String closing = null;
+        if (text.regionMatches(true, start + 1, "style", 0, 5)) {
+            closing = "</style";
+        } else if (text.regionMatches(true, start + 1, "script", 0, 6)) {
+            closing = "</script";
+        } else if (text.startsWith("!--", start + 1)) {
+            for (int i = start + 4; i + 3 <= end; i++) {
+                if (text.startsWith("-->", i)) {
+                    return i + 3;
+                }
+            }
+            return end;
+        }
+
+        int i = start + 1;
+        if (closing != null) {
+            while (i < end && !(text.charAt(i) == '<' && text.regionMatches(true, i, closing, 0, closing.length()))) {
+                i++;
+            }
+        }
+        // Only look within the scanned prefix; a tag left open runs to its end
+        while (i < end && text.charAt(i) != '>') {
+            i++;
+        }
+        return i < end ? i + 1 : end;
+    }
+}
@@ -0,0 +1,206 @@
+package com.notifysync.notifysync.service.filter;
+
+import com.notifysync.notifysync.model.Email;
+import com.notifysync.notifysync.model.Notification;
+import com.notifysync.notifysync.service.tracking.UserFeedbackEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Email filter that scores emails with a linear model learned from user feedback.
+ * <p>
+ * Enabled with {@code notifysync.filter.mode=learned}. Until the model has seen enough
+ * feedback it defers to the rule-based {@link EmailFilterServiceImpl}.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "notifysync.filter.mode", havingValue = "learned")
+@RequiredArgsConstructor
+@Slf4j
+public class LearnedEmailFilterService implements EmailFilterService {
+
+    private final EmailFilterServiceImpl ruleBasedFilter;
+
+    @Value("${notifysync.filter.recency-hours:24}")
+    private int recencyHours;
+
+    @Value("${notifysync.filter.learned.model-file:importance_model.bin}")
+    private String modelFile;
+
+    @Value("${notifysync.filter.learned.dimension-bits:18}")
+    private int dimensionBits;
+
+    @Value("${notifysync.filter.learned.learning-rate:0.1}")
+    private float learningRate;
+
+    @Value("${notifysync.filter.learned.threshold:0.5}")
+    private float threshold;
+
+    @Value("${notifysync.filter.learned.high-priority-score:0.8}")
+    private float highPriorityScore;
+
+    @Value("${notifysync.filter.learned.medium-priority-score:0.65}")
+    private float mediumPriorityScore;
+
+    @Value("${notifysync.filter.learned.min-training-examples:50}")
+    private int minTrainingExamples;
+
+    @Value("${notifysync.filter.learned.snapshot-every-updates:20}")
+    private int snapshotEveryUpdates;
+
+    private HashedLinearModel model;
+
+    @PostConstruct
+    public void init() {
+        model = new HashedLinearModel(dimensionBits, learningRate);
+
+        Path path = Paths.get(modelFile);
+        if (!Files.exists(path)) {
+            log.info("No importance model snapshot found, starting untrained");
+            return;
+        }
+
+        try (InputStream in = Files.newInputStream(path)) {
+            model.readSnapshot(new DataInputStream(new BufferedInputStream(in)));
+            log.info("Loaded importance model trained on {} feedback events", model.getUpdateCount());
+        } catch (IOException e) {
+            log.error("Failed to load importance model snapshot, starting untrained", e);
+            model = new HashedLinearModel(dimensionBits, learningRate);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        saveSnapshot();
+    }
+
+    @Override
+    public boolean isImportantEmail(Email email) {
+        if (email != null && !isTrained()) {
+            log.debug("Importance model has only {} feedback events, using rule-based filter",
+                    model.getUpdateCount());
+            return ruleBasedFilter.isImportantEmail(email);
+        }
+        return classifyWithoutBody(email) == FilterDecision.IMPORTANT;
+    }
+
+    @Override
+    public FilterDecision classifyWithoutBody(Email email) {
+        if (email == null) {
+            log.debug("Email is null");
+            return FilterDecision.NOT_IMPORTANT;
+        }
+
+        if (!isTrained()) {
+            return ruleBasedFilter.classifyWithoutBody(email);
+        }
+
+        // Check if email is recent
+        if (email.getReceivedAt() == null ||
+                ChronoUnit.HOURS.between(email.getReceivedAt(), LocalDateTime.now()) > recencyHours) {
+            log.debug("Email is too old or has no received date");
+            return FilterDecision.NOT_IMPORTANT;
+        }
+
+        // The model only uses header features, so it never needs the body
+        float score = score(email);
+        log.debug("Importance score for email '{}': {}", email.getSubject(), score);
+        return score >= threshold ? FilterDecision.IMPORTANT : FilterDecision.NOT_IMPORTANT;
+    }
+
+    @Override
+    public boolean classifyWithBody(Email email) {
+        if (!isTrained()) {
+            return ruleBasedFilter.classifyWithBody(email);
+        }
+        // The model never leaves an email undecided, so it can only get here if it
+        // finished training after the header tier ran
+        return classifyWithoutBody(email) == FilterDecision.IMPORTANT;
+    }
+
+    @Override
+    public Notification.NotificationPriority priorityOf(Email email) {
+        if (!isTrained()) {
+            return ruleBasedFilter.priorityOf(email);
+        }
+
+        // The more confident the model is, the more urgent the notification
+        float score = score(email);
+        if (score >= highPriorityScore) {
+            return Notification.NotificationPriority.HIGH;
+        }
+        return score >= mediumPriorityScore ?
+                Notification.NotificationPriority.MEDIUM :
+                Notification.NotificationPriority.LOW;
+    }
+
+    private float score(Email email) {
+        return model.score(email.getSenderEmail(), email.getSubject(),
+                isReply(email.getSubject()), isThreadContinuation(email.getId(), email.getThreadId()));
+    }
+
+    private boolean isTrained() {
+        return model.getUpdateCount() >= minTrainingExamples;
+    }
+
+    @EventListener
+    public void onUserFeedback(UserFeedbackEvent event) {
+        model.update(event.senderEmail(), event.subject(), isReply(event.subject()),
+                isThreadContinuation(event.emailId(), event.threadId()), event.relevant());
+
+        if (snapshotEveryUpdates > 0 && model.getUpdateCount() % snapshotEveryUpdates == 0) {
+            saveSnapshot();
+        }
+    }
+
+    private void saveSnapshot() {
+        Path path = Paths.get(modelFile);
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try {
+            try (OutputStream out = Files.newOutputStream(tempPath)) {
+                DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+                model.writeSnapshot(dataOut);
+                dataOut.flush();
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Saved importance model snapshot after {} feedback events", model.getUpdateCount());
+        } catch (IOException e) {
+            log.error("Failed to save importance model snapshot", e);
+        }
+    }
+
+    /**
+     * Gmail uses the ID of the first message as the thread ID, so any other message is a follow-up
+     */
+    private static boolean isThreadContinuation(String emailId, String threadId) {
+        return threadId != null && !threadId.isEmpty() && !threadId.equals(emailId);
+    }
+
+    private static boolean isReply(String subject) {
+        return subject != null && (subject.regionMatches(true, 0, "re:", 0, 3) ||
+                subject.regionMatches(true, 0, "fw:", 0, 3) ||
+                subject.regionMatches(true, 0, "fwd:", 0, 4));
+    }
+}
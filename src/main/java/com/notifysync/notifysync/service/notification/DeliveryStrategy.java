@@ -0,0 +1,13 @@
+package com.notifysync.notifysync.service.notification;
+
+/**
+ * How a notification is spread over the available channels
+ */
+public enum DeliveryStrategy {
+    /** try channels one at a time in {@code @Order}, stopping at the first success */
+    FAILOVER,
+    /** send through every available channel at once */
+    FANOUT,
+    /** like failover, but also start the next channel if the current one hasn't answered within the hedge delay */
+    HEDGED
+}
@@ -0,0 +1,10 @@
+package com.notifysync.notifysync.service.notification;
+
+/**
+ * Published when a digest has been delivered, so the emails it combined can be
+ * counted as the one message the user actually received
+ *
+ * @param emails The number of emails in the digest
+ */
+public record DigestSentEvent(int emails) {
+}
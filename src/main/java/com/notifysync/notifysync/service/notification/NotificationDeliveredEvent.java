@@ -0,0 +1,14 @@
+package com.notifysync.notifysync.service.notification;
+
+import com.notifysync.notifysync.model.Email;
+
+/**
+ * Published once a notification is finished with, either because a channel delivered it
+ * or because it ran out of attempts. Outbox entries recovered after a restart have no
+ * caller waiting on them, so this is how their outcome reaches the tracking store.
+ *
+ * @param email The email the notification was about
+ * @param sent Whether a channel delivered it
+ */
+public record NotificationDeliveredEvent(Email email, boolean sent) {
+}
@@ -0,0 +1,83 @@
+package com.notifysync.notifysync.service.notification;
+
+import com.notifysync.notifysync.model.Email;
+import com.notifysync.notifysync.model.Notification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffer that coalesces notifications into digests.
+ * <p>
+ * Notifications below {@code immediate-priority} are held until the oldest has waited
+ * {@code window-seconds} or {@code max-items} have been collected, and then go out as
+ * one combined message. Notifications at or above it bypass the buffer. Buffered
+ * notifications are already in the {@link NotificationOutbox}, so a restart sends
+ * them individually rather than losing them.
+ */
+@Service
+public class NotificationDigest {
+
+    @Value("${notifysync.notification.digest.enabled:false}")
+    private boolean enabled;
+
+    @Value("${notifysync.notification.digest.window-seconds:300}")
+    private long windowSeconds;
+
+    @Value("${notifysync.notification.digest.max-items:10}")
+    private int maxItems;
+
+    @Value("${notifysync.notification.digest.immediate-priority:HIGH}")
+    private Notification.NotificationPriority immediatePriority;
+
+    // Guarded by this
+    private List<Item> buffered = new ArrayList<>();
+    private long windowStartedAt;
+
+    /**
+     * @return Whether a notification of this priority should wait for a digest
+     */
+    public boolean shouldBuffer(Notification.NotificationPriority priority) {
+        // Priorities are declared from most to least urgent
+        return enabled && priority.compareTo(immediatePriority) > 0;
+    }
+
+    /**
+     * Buffer a notification
+     *
+     * @return The digest to send now if this item filled it, otherwise an empty list
+     */
+    public synchronized List<Item> add(String deliveryId, Email email, Notification.NotificationPriority priority) {
+        if (buffered.isEmpty()) {
+            windowStartedAt = System.currentTimeMillis();
+        }
+        buffered.add(new Item(deliveryId, email, priority));
+        return buffered.size() >= maxItems ? drain() : List.of();
+    }
+
+    /**
+     * @return The digest to send now if its window has passed, otherwise an empty list
+     */
+    public synchronized List<Item> drainIfDue() {
+        if (buffered.isEmpty() ||
+                System.currentTimeMillis() - windowStartedAt < TimeUnit.SECONDS.toMillis(windowSeconds)) {
+            return List.of();
+        }
+        return drain();
+    }
+
+    private List<Item> drain() {
+        List<Item> digest = buffered;
+        buffered = new ArrayList<>();
+        return digest;
+    }
+
+    /**
+     * A buffered notification and its outbox entry
+     */
+    public record Item(String deliveryId, Email email, Notification.NotificationPriority priority) {
+    }
+}
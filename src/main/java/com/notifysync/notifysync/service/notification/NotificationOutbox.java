@@ -0,0 +1,586 @@
+package com.notifysync.notifysync.service.notification;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notifysync.notifysync.model.Email;
+import com.notifysync.notifysync.model.Notification;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent record of notifications that have not been delivered yet.
+ * <p>
+ * The outbox is an append-only log of JSON lines. An entry is written and synced
+ * before its first delivery attempt, so a notification survives a failed send or a
+ * restart. Retry schedules and delivery acknowledgements are buffered and written in
+ * batches; a crash can therefore cost at most one batch of acknowledgements, whose
+ * notifications are sent again after the restart. The log is rewritten with just the
+ * pending entries on startup and once enough entries have been acknowledged.
+ * <p>
+ * All file access after startup happens on a dedicated writer thread, which writes
+ * new entries and buffered acknowledgements together and syncs them once, so adding
+ * an entry never waits for the disk.
+ */
+@Service
+@Slf4j
+public class NotificationOutbox {
+
+    private static final byte NEWLINE = '\n';
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000;
+
+    // Queued to make the writer write buffered acknowledgements without waiting for its interval
+    private static final QueuedEntry WAKE_UP = new QueuedEntry(null, null, null);
+
+    @Value("${notifysync.notification.outbox.file:notification_outbox.log}")
+    private String outboxFile;
+
+    @Value("${notifysync.notification.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${notifysync.notification.outbox.initial-backoff-seconds:30}")
+    private long initialBackoffSeconds;
+
+    @Value("${notifysync.notification.outbox.max-backoff-seconds:3600}")
+    private long maxBackoffSeconds;
+
+    @Value("${notifysync.notification.outbox.ack-batch-size:32}")
+    private int ackBatchSize;
+
+    @Value("${notifysync.notification.outbox.compact-after:1000}")
+    private int compactAfter;
+
+    @Value("${notifysync.notification.outbox.flush-interval-seconds:5}")
+    private long flushIntervalSeconds;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Guarded by this
+    private final Map<String, PendingDelivery> pending = new LinkedHashMap<>();
+    private final List<byte[]> unwrittenAcks = new ArrayList<>();
+    private int acknowledgedSinceCompaction;
+    private boolean running;
+
+    private final BlockingQueue<QueuedEntry> queue = new LinkedBlockingQueue<>();
+    private Thread writer;
+
+    // Writer thread only, once started
+    private FileChannel channel;
+
+    @PostConstruct
+    public void init() {
+        objectMapper.findAndRegisterModules();
+
+        Path file = Paths.get(outboxFile);
+        try {
+            if (Files.exists(file)) {
+                replay(file);
+            }
+            compact(encodePending());
+        } catch (IOException e) {
+            log.error("Failed to open notification outbox, undelivered notifications will not survive a restart", e);
+            return;
+        }
+
+        running = true;
+        writer = new Thread(this::runWriter, "notification-outbox-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        if (!pending.isEmpty()) {
+            log.info("Loaded {} undelivered notifications from outbox", pending.size());
+        }
+    }
+
+    /**
+     * Queue a new entry to be written. The entry starts out claimed, so {@link #claimDue}
+     * doesn't hand it out before its first attempt, which should wait for the returned future.
+     *
+     * @return Completes with the entry's ID, used to acknowledge or reschedule it, once the
+     *         entry is synced; completes exceptionally if it could not be written
+     * @throws IOException If the outbox could not be opened
+     */
+    public CompletableFuture<String> add(Email email, Notification.NotificationPriority priority) throws IOException {
+        PendingDelivery delivery = new PendingDelivery(UUID.randomUUID().toString(), email, priority);
+        delivery.inFlight = true;
+        byte[] record = encode(OutboxRecord.enqueued(delivery));
+        CompletableFuture<String> written = new CompletableFuture<>();
+
+        synchronized (this) {
+            if (!running) {
+                throw new IOException("Notification outbox is not open");
+            }
+            pending.put(delivery.id, delivery);
+            queue.add(new QueuedEntry(delivery.id, record, written));
+        }
+        return written;
+    }
+
+    /**
+     * Mark an entry delivered; it will not be handed out again
+     */
+    public synchronized void delivered(String id) {
+        if (pending.remove(id) != null) {
+            bufferAck(OutboxRecord.done(id));
+        }
+    }
+
+    /**
+     * Schedule another attempt after a failed one, backing off exponentially
+     *
+     * @return false if the entry has used up its attempts and was dropped
+     */
+    public synchronized boolean retryLater(String id) {
+        PendingDelivery delivery = pending.get(id);
+        if (delivery == null) {
+            return false;
+        }
+
+        delivery.inFlight = false;
+        delivery.attempts++;
+        if (delivery.attempts >= maxAttempts) {
+            log.error("Giving up on notification for email {} after {} attempts",
+                    delivery.email.getId(), delivery.attempts);
+            pending.remove(id);
+            bufferAck(OutboxRecord.done(id));
+            return false;
+        }
+
+        long backoffSeconds = Math.min(initialBackoffSeconds << Math.min(delivery.attempts - 1, 30), maxBackoffSeconds);
+        delivery.nextAttemptAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(backoffSeconds);
+        bufferAck(OutboxRecord.retry(delivery));
+        log.info("Retrying notification for email {} in {}s (attempt {} of {})",
+                delivery.email.getId(), backoffSeconds, delivery.attempts + 1, maxAttempts);
+        return true;
+    }
+
+    /**
+     * Claim the entries whose next attempt is due. Each stays claimed until it is
+     * passed to {@link #delivered} or {@link #retryLater}.
+     */
+    public synchronized List<PendingDelivery> claimDue() {
+        long now = System.currentTimeMillis();
+        List<PendingDelivery> due = new ArrayList<>();
+        for (PendingDelivery delivery : pending.values()) {
+            if (!delivery.inFlight && delivery.nextAttemptAt <= now) {
+                delivery.inFlight = true;
+                due.add(delivery);
+            }
+        }
+        return due;
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Stop accepting entries, write everything queued and close the file
+     */
+    @PreDestroy
+    public void close() {
+        Thread stopping;
+        synchronized (this) {
+            running = false;
+            stopping = writer;
+        }
+        if (stopping == null) {
+            return;
+        }
+
+        try {
+            stopping.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (stopping.isAlive()) {
+            log.warn("Notification outbox writer did not finish within {} ms", SHUTDOWN_TIMEOUT_MILLIS);
+        }
+    }
+
+    private void bufferAck(OutboxRecord record) {
+        acknowledgedSinceCompaction++;
+        try {
+            unwrittenAcks.add(encode(record));
+        } catch (IOException e) {
+            log.error("Failed to encode notification outbox record", e);
+            return;
+        }
+        if (unwrittenAcks.size() >= ackBatchSize) {
+            queue.add(WAKE_UP);
+        }
+    }
+
+    private void runWriter() {
+        long flushIntervalMillis = TimeUnit.SECONDS.toMillis(flushIntervalSeconds);
+        List<QueuedEntry> batch = new ArrayList<>();
+        try {
+            while (isRunning() || !queue.isEmpty()) {
+                QueuedEntry first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                    batch.removeIf(entry -> entry == WAKE_UP);
+                }
+                writeBatch(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeChannel();
+        }
+    }
+
+    private synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Write new entries together with the buffered acknowledgements and sync them once,
+     * or rewrite the log instead once enough entries have been acknowledged
+     */
+    private void writeBatch(List<QueuedEntry> entries) {
+        List<byte[]> acks;
+        List<byte[]> compacted = null;
+        synchronized (this) {
+            acks = new ArrayList<>(unwrittenAcks);
+            unwrittenAcks.clear();
+            if (acknowledgedSinceCompaction >= compactAfter) {
+                try {
+                    // Includes the new entries, which are already pending
+                    compacted = encodePending();
+                } catch (IOException e) {
+                    log.error("Failed to encode notification outbox for compaction", e);
+                }
+            }
+        }
+        if (entries.isEmpty() && acks.isEmpty() && compacted == null) {
+            return;
+        }
+
+        if (compacted != null) {
+            try {
+                compact(compacted);
+                finish(entries, null);
+                return;
+            } catch (IOException e) {
+                log.error("Failed to compact notification outbox, appending instead", e);
+            }
+        }
+
+        try {
+            append(entries, acks);
+            finish(entries, null);
+        } catch (IOException e) {
+            log.error("Failed to write {} entries and {} acknowledgements to notification outbox",
+                    entries.size(), acks.size(), e);
+            synchronized (this) {
+                unwrittenAcks.addAll(0, acks);
+                for (QueuedEntry entry : entries) {
+                    pending.remove(entry.id());
+                }
+            }
+            finish(entries, e);
+        }
+    }
+
+    private static void finish(List<QueuedEntry> entries, IOException error) {
+        for (QueuedEntry entry : entries) {
+            if (error == null) {
+                entry.written().complete(entry.id());
+            } else {
+                entry.written().completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * Append records and sync them; nothing of them is left in the file if that fails
+     */
+    private void append(List<QueuedEntry> entries, List<byte[]> acks) throws IOException {
+        int bytes = 0;
+        for (QueuedEntry entry : entries) {
+            bytes += entry.record().length;
+        }
+        for (byte[] record : acks) {
+            bytes += record.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        for (QueuedEntry entry : entries) {
+            buffer.put(entry.record());
+        }
+        for (byte[] record : acks) {
+            buffer.put(record);
+        }
+        buffer.flip();
+
+        if (channel == null) {
+            channel = FileChannel.open(Paths.get(outboxFile).toAbsolutePath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        long position = channel.size();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            // A partial write would leave a torn line in the middle of the file
+            try {
+                channel.truncate(position);
+            } catch (IOException truncateError) {
+                log.error("Failed to discard partly written notification outbox records", truncateError);
+            }
+            closeChannel();
+            throw e;
+        }
+    }
+
+    /**
+     * Replace the log with the given records. The current file stays in use until the
+     * new one has been synced and moved into place.
+     */
+    private void compact(List<byte[]> records) throws IOException {
+        Path target = Paths.get(outboxFile).toAbsolutePath();
+        Path tempFile = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (byte[] record : records) {
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            out.force(false);
+        }
+        Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // The old channel now points at the replaced file; the next append opens the new one
+        closeChannel();
+        synchronized (this) {
+            acknowledgedSinceCompaction = 0;
+        }
+    }
+
+    /**
+     * One enqueued record per pending entry, reflecting every acknowledgement so far
+     */
+    private synchronized List<byte[]> encodePending() throws IOException {
+        List<byte[]> records = new ArrayList<>(pending.size());
+        for (PendingDelivery delivery : pending.values()) {
+            records.add(encode(OutboxRecord.enqueued(delivery)));
+        }
+        return records;
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.error("Failed to close notification outbox", e);
+            }
+            channel = null;
+        }
+    }
+
+    private void replay(Path file) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        int lineStart = 0;
+
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] != NEWLINE) continue;
+
+            if (i > lineStart) {
+                try {
+                    apply(objectMapper.readValue(content, lineStart, i - lineStart, OutboxRecord.class));
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable notification outbox record at offset {}", lineStart, e);
+                }
+            }
+            lineStart = i + 1;
+        }
+
+        if (lineStart < content.length) {
+            log.warn("Dropping torn record of {} bytes at the end of notification outbox", content.length - lineStart);
+        }
+    }
+
+    private void apply(OutboxRecord record) {
+        switch (record.getType()) {
+            case ENQUEUED -> {
+                PendingDelivery delivery = new PendingDelivery(record.getId(), record.getEmail().toEmail(),
+                        record.getPriority() != null ? record.getPriority() : Notification.NotificationPriority.HIGH);
+                delivery.attempts = record.getAttempts();
+                delivery.nextAttemptAt = record.getNextAttemptAt();
+                pending.put(delivery.id, delivery);
+            }
+            case RETRY -> {
+                PendingDelivery delivery = pending.get(record.getId());
+                if (delivery != null) {
+                    delivery.attempts = record.getAttempts();
+                    delivery.nextAttemptAt = record.getNextAttemptAt();
+                }
+            }
+            case DONE -> pending.remove(record.getId());
+        }
+    }
+
+    private byte[] encode(OutboxRecord record) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(record);
+        byte[] line = new byte[json.length + 1];
+        System.arraycopy(json, 0, line, 0, json.length);
+        line[json.length] = NEWLINE;
+        return line;
+    }
+
+    private record QueuedEntry(String id, byte[] record, CompletableFuture<String> written) {
+    }
+
+    /**
+     * An undelivered notification
+     */
+    public static class PendingDelivery {
+        private final String id;
+        private final Email email;
+        private final Notification.NotificationPriority priority;
+        private int attempts;
+        private long nextAttemptAt;
+        private boolean inFlight;
+
+        private PendingDelivery(String id, Email email, Notification.NotificationPriority priority) {
+            this.id = id;
+            this.email = email;
+            this.priority = priority;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Email getEmail() {
+            return email;
+        }
+
+        public Notification.NotificationPriority getPriority() {
+            return priority;
+        }
+    }
+
+    /**
+     * One line of the outbox log
+     */
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public static class OutboxRecord {
+
+        public enum Type {
+            ENQUEUED,
+            RETRY,
+            DONE
+        }
+
+        private Type type;
+        private String id;
+        private int attempts;
+        private long nextAttemptAt;
+        private StoredEmail email;
+        private Notification.NotificationPriority priority;
+
+        static OutboxRecord enqueued(PendingDelivery delivery) {
+            OutboxRecord record = retry(delivery);
+            record.setType(Type.ENQUEUED);
+            record.setEmail(StoredEmail.from(delivery.email));
+            record.setPriority(delivery.priority);
+            return record;
+        }
+
+        static OutboxRecord retry(PendingDelivery delivery) {
+            OutboxRecord record = new OutboxRecord();
+            record.setType(Type.RETRY);
+            record.setId(delivery.id);
+            record.setAttempts(delivery.attempts);
+            record.setNextAttemptAt(delivery.nextAttemptAt);
+            return record;
+        }
+
+        static OutboxRecord done(String id) {
+            OutboxRecord record = new OutboxRecord();
+            record.setType(Type.DONE);
+            record.setId(id);
+            return record;
+        }
+    }
+
+    /**
+     * The parts of an email the channels need to render a notification
+     */
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class StoredEmail {
+        private String id;
+        private String threadId;
+        private String subject;
+        private String sender;
+        private String senderEmail;
+        private String body;
+        private String snippet;
+        private List<String> labelIds;
+        private LocalDateTime receivedAt;
+        private boolean important;
+
+        static StoredEmail from(Email email) {
+            StoredEmail stored = new StoredEmail();
+            stored.setId(email.getId());
+            stored.setThreadId(email.getThreadId());
+            stored.setSubject(email.getSubject());
+            stored.setSender(email.getSender());
+            stored.setSenderEmail(email.getSenderEmail());
+            stored.setBody(email.getBody());
+            stored.setSnippet(email.getSnippet());
+            stored.setLabelIds(email.getLabelIds());
+            stored.setReceivedAt(email.getReceivedAt());
+            stored.setImportant(email.isImportant());
+            return stored;
+        }
+
+        Email toEmail() {
+            return Email.builder()
+                    .id(id)
+                    .threadId(threadId)
+                    .subject(subject)
+                    .sender(sender)
+                    .senderEmail(senderEmail)
+                    .body(body)
+                    .snippet(snippet)
+                    .labelIds(labelIds)
+                    .receivedAt(receivedAt)
+                    .isImportant(important)
+                    .build();
+        }
+    }
+}
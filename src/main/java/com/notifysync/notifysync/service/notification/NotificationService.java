@@ -5,7 +5,36 @@ import com.notifysync.notifysync.model.Email;
 import com.notifysync.notifysync.model.Notification;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface NotificationService {
+
+    /**
+     * Send notifications for an email and wait for the outcome
+     */
     List<Notification> sendNotifications(Email email);
+
+    /**
+     * Queue notifications for an email on the channel workers without waiting. The email
+     * is kept in the outbox and retried with backoff until a channel delivers it.
+     *
+     * @param email The email to notify about
+     * @param priority Orders the email in the channel queues by its latency budget;
+     *                 priorities below the digest threshold wait to be sent in a digest
+     * @return Completes once the email is delivered or retries are exhausted, with the
+     *         notifications of the last attempt and their final status
+     */
+    CompletableFuture<List<Notification>> dispatchNotifications(Email email, Notification.NotificationPriority priority);
+
+    default CompletableFuture<List<Notification>> dispatchNotifications(Email email) {
+        return dispatchNotifications(email, Notification.NotificationPriority.HIGH);
+    }
+
+    /**
+     * @return Whether notifications of this priority are held for a digest, which is
+     *         announced with a {@link DigestSentEvent} once delivered
+     */
+    default boolean isDigested(Notification.NotificationPriority priority) {
+        return false;
+    }
 }
@@ -4,14 +4,33 @@ package com.notifysync.notifysync.service.notification;
 import com.notifysync.notifysync.model.Email;
 import com.notifysync.notifysync.model.Notification;
 import com.notifysync.notifysync.service.channel.NotificationChannel;
+import com.notifysync.notifysync.service.routing.NotificationRouter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 
 @Service
@@ -20,65 +39,512 @@ import java.util.UUID;
 public class NotificationServiceImpl implements NotificationService {
 
     private final List<NotificationChannel> channels;
+    private final NotificationOutbox outbox;
+    private final NotificationDigest digest;
+    private final NotificationRouter router;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${notifysync.notification.workers-per-channel:2}")
+    private int workersPerChannel;
+
+    @Value("${notifysync.notification.shutdown-timeout-seconds:10}")
+    private int shutdownTimeoutSeconds;
+
+    @Value("${notifysync.notification.delivery.high:FAILOVER}")
+    private DeliveryStrategy highPriorityDelivery;
+
+    @Value("${notifysync.notification.delivery.medium:FAILOVER}")
+    private DeliveryStrategy mediumPriorityDelivery;
+
+    @Value("${notifysync.notification.delivery.low:FAILOVER}")
+    private DeliveryStrategy lowPriorityDelivery;
+
+    @Value("${notifysync.notification.delivery.hedge-delay-millis:1500}")
+    private long hedgeDelayMillis;
+
+    @Value("${notifysync.notification.rate-limit.max-wait-millis:2000}")
+    private long rateLimitMaxWaitMillis;
+
+    @Value("${notifysync.notification.circuit-breaker.failure-threshold:3}")
+    private int circuitFailureThreshold;
+
+    @Value("${notifysync.notification.circuit-breaker.open-seconds:60}")
+    private long circuitOpenSeconds;
+
+    @Value("${notifysync.routing.batch-size:25}")
+    private int routingBatchSize;
+
+    @Value("${notifysync.notification.latency-budget-seconds.high:5}")
+    private long highPriorityBudgetSeconds;
+
+    @Value("${notifysync.notification.latency-budget-seconds.medium:60}")
+    private long mediumPriorityBudgetSeconds;
+
+    @Value("${notifysync.notification.latency-budget-seconds.low:600}")
+    private long lowPriorityBudgetSeconds;
+
+    // Each channel gets its own workers so a slow provider cannot hold up the others, and
+    // each queue lets urgent notifications ahead of a backlog of less urgent ones
+    private final Map<Notification.NotificationChannel, PriorityWorkerPool> channelWorkers =
+            new EnumMap<>(Notification.NotificationChannel.class);
+
+    private final Map<Notification.NotificationChannel, TokenBucket> rateLimiters =
+            new EnumMap<>(Notification.NotificationChannel.class);
+    private final Map<Notification.NotificationChannel, CircuitBreaker> circuitBreakers =
+            new EnumMap<>(Notification.NotificationChannel.class);
+
+    // Callers waiting on an outbox entry that is still being retried
+    private final Map<String, CompletableFuture<List<Notification>>> awaitingDelivery = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        Map<Notification.NotificationPriority, Long> latencyBudgets = new EnumMap<>(Map.of(
+                Notification.NotificationPriority.HIGH, TimeUnit.SECONDS.toMillis(highPriorityBudgetSeconds),
+                Notification.NotificationPriority.MEDIUM, TimeUnit.SECONDS.toMillis(mediumPriorityBudgetSeconds),
+                Notification.NotificationPriority.LOW, TimeUnit.SECONDS.toMillis(lowPriorityBudgetSeconds)));
+
+        for (NotificationChannel channel : channels) {
+            channelWorkers.computeIfAbsent(channel.getChannelType(), type ->
+                    new PriorityWorkerPool(Math.max(1, workersPerChannel), workerThreadFactory(type), latencyBudgets));
+            rateLimiters.put(channel.getChannelType(),
+                    new TokenBucket(channel.getMessagesPerSecond(), channel.getMessageBurst()));
+            circuitBreakers.put(channel.getChannelType(),
+                    new CircuitBreaker(circuitFailureThreshold, TimeUnit.SECONDS.toMillis(circuitOpenSeconds)));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Let queued notifications go out before the application stops
+        channelWorkers.values().forEach(ExecutorService::shutdown);
+        for (ExecutorService workers : channelWorkers.values()) {
+            try {
+                if (!workers.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
+                    log.warn("Notification workers did not finish within {}s", shutdownTimeoutSeconds);
+                    workers.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                workers.shutdownNow();
+            }
+        }
+    }
 
     @Override
     public List<Notification> sendNotifications(Email email) {
-        List<Notification> results = new ArrayList<>();
+        return dispatchNotifications(email, Notification.NotificationPriority.HIGH).join();
+    }
 
+    @Override
+    public CompletableFuture<List<Notification>> dispatchNotifications(Email email,
+                                                                      Notification.NotificationPriority priority) {
         if (email == null) {
             log.warn("Cannot send notification for null email");
-            return results;
+            return CompletableFuture.completedFuture(new ArrayList<>());
         }
 
-        log.info("Sending notifications for email: {}", email.getSubject());
+        // Subscribers are notified independently; only the user's own delivery is reported back
+        sendToSubscribers(email, priority);
 
-        // Try each channel in priority order (they are injected in the order defined by @Order)
+        CompletableFuture<String> added;
+        try {
+            added = outbox.add(email, priority);
+        } catch (IOException e) {
+            log.error("Failed to write notification to outbox, sending without retries: {}", email.getSubject(), e);
+            return sendWithoutOutbox(email, priority);
+        }
+
+        // The first attempt waits until the outbox's writer has synced the entry
+        CompletableFuture<List<Notification>> delivery = new CompletableFuture<>();
+        added.whenComplete((deliveryId, error) -> {
+            if (error != null) {
+                log.error("Failed to write notification to outbox, sending without retries: {}",
+                        email.getSubject(), error);
+                sendWithoutOutbox(email, priority).whenComplete((results, sendError) -> {
+                    if (sendError != null) {
+                        delivery.completeExceptionally(sendError);
+                    } else {
+                        delivery.complete(results);
+                    }
+                });
+                return;
+            }
+
+            awaitingDelivery.put(deliveryId, delivery);
+            if (digest.shouldBuffer(priority)) {
+                log.debug("Holding {} notification for digest: {}", priority, email.getSubject());
+                sendDigest(digest.add(deliveryId, email, priority));
+            } else {
+                log.info("Sending notifications for email: {}", email.getSubject());
+                attemptFromOutbox(List.of(deliveryId), List.of(email), priority);
+            }
+        });
+        return delivery;
+    }
+
+    @Override
+    public boolean isDigested(Notification.NotificationPriority priority) {
+        return digest.shouldBuffer(priority);
+    }
+
+    private CompletableFuture<List<Notification>> sendWithoutOutbox(Email email,
+                                                                    Notification.NotificationPriority priority) {
+        return attempt(List.of(email), priority).whenComplete((results, error) ->
+                publishDelivered(email, error == null && isSent(results)));
+    }
+
+    /**
+     * Send the notification to the subscribers the router picks for this email. Each
+     * channel gets them a batch at a time, so a large subscriber list doesn't overflow
+     * the channel's send queue or hold up other emails for long. Failures are logged;
+     * subscriber sends are not kept in the outbox.
+     */
+    private void sendToSubscribers(Email email, Notification.NotificationPriority priority) {
+        Map<Notification.NotificationChannel, List<String>> routed = router.route(email);
         for (NotificationChannel channel : channels) {
-            if (!channel.isAvailable()) {
-                log.debug("Channel {} is not available", channel.getChannelType());
-                continue;
+            List<String> addresses = routed.get(channel.getChannelType());
+            if (addresses != null) {
+                log.info("Sending notification via {} to {} subscribers for email: {}",
+                        channel.getChannelType(), addresses.size(), email.getSubject());
+                sendBatchesFrom(0, channel, email, priority, addresses);
             }
+        }
+    }
+
+    /**
+     * Send one batch after another on the channel's workers, at the notification's
+     * priority. Batches are skipped while the channel is not configured, and each needs
+     * a permit from the channel's circuit breaker and counts as one call towards it. The
+     * channel's token bucket is not used: it paces the user's own destination, while
+     * subscriber sends are paced per address by the channel's sender.
+     */
+    private CompletableFuture<Void> sendBatchesFrom(int from, NotificationChannel channel, Email email,
+                                                    Notification.NotificationPriority priority,
+                                                    List<String> addresses) {
+        if (from >= addresses.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
 
-            Notification notification = Notification.builder()
-                    .id(UUID.randomUUID().toString())
-                    .title(email.getSubject())
-                    .message(createNotificationMessage(email))
-                    .channel(channel.getChannelType())
-                    .priority(Notification.NotificationPriority.HIGH)
-                    .createdAt(LocalDateTime.now())
-                    .status(Notification.NotificationStatus.PENDING)
-                    .build();
+        List<String> batch = addresses.subList(from, Math.min(addresses.size(), from + routingBatchSize));
+        return CompletableFuture.runAsync(() -> sendBatch(channel, email, batch),
+                        channelWorkers.get(channel.getChannelType()).at(priority))
+                .thenCompose(ignored -> sendBatchesFrom(from + batch.size(), channel, email, priority, addresses));
+    }
 
-            try {
-                boolean sent = channel.sendNotification(email);
-                notification.setStatus(sent ?
-                        Notification.NotificationStatus.SENT :
-                        Notification.NotificationStatus.FAILED);
+    private void sendBatch(NotificationChannel channel, Email email, List<String> batch) {
+        if (!channel.isConfigured()) {
+            log.warn("Channel {} is not configured, skipping {} subscribers", channel.getChannelType(), batch.size());
+            return;
+        }
+        CircuitBreaker circuitBreaker = circuitBreakers.get(channel.getChannelType());
+        if (!circuitBreaker.tryAcquire()) {
+            log.warn("Skipping {} subscribers via {}, circuit is open, for email: {}",
+                    batch.size(), channel.getChannelType(), email.getSubject());
+            return;
+        }
 
-                if (sent) {
-                    log.info("Successfully sent notification via {} for email: {}",
-                            channel.getChannelType(), email.getSubject());
-                    results.add(notification);
+        List<String> failed;
+        try {
+            failed = channel.sendNotification(email, batch).join();
+        } catch (Exception e) {
+            log.error("Error sending notification via {} to subscribers", channel.getChannelType(), e);
+            failed = batch;
+        }
 
+        // Some addresses failing says more about them than about the channel
+        recordOutcome(channel, failed.size() < batch.size());
+        if (!failed.isEmpty()) {
+            log.warn("Failed to send notification via {} to {} of {} subscribers for email: {}",
+                    channel.getChannelType(), failed.size(), batch.size(), email.getSubject());
+        }
+    }
+
+    /**
+     * Retry outbox entries whose backoff has expired, including any left over from before a restart
+     */
+    @Scheduled(fixedDelayString = "${notifysync.notification.outbox.retry-check-seconds:15}000")
+    public void retryPendingDeliveries() {
+        for (NotificationOutbox.PendingDelivery pending : outbox.claimDue()) {
+            log.info("Retrying notification for email: {}", pending.getEmail().getSubject());
+            attemptFromOutbox(List.of(pending.getId()), List.of(pending.getEmail()), pending.getPriority());
+        }
+    }
 
-                     break;
+    /**
+     * Send the digest once its window has passed
+     */
+    @Scheduled(fixedDelayString = "${notifysync.notification.digest.check-interval-seconds:10}000")
+    public void sendDueDigest() {
+        sendDigest(digest.drainIfDue());
+    }
+
+    private void sendDigest(List<NotificationDigest.Item> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        log.info("Sending digest of {} notifications", items.size());
+        attemptFromOutbox(
+                items.stream().map(NotificationDigest.Item::deliveryId).toList(),
+                items.stream().map(NotificationDigest.Item::email).toList(),
+                items.stream().map(NotificationDigest.Item::priority).min(Comparator.naturalOrder()).orElseThrow())
+                .thenAccept(sent -> {
+                    if (sent) {
+                        eventPublisher.publishEvent(new DigestSentEvent(items.size()));
+                    }
+                });
+    }
+
+    /**
+     * Make one delivery attempt for outbox entries sent together. Once an entry is
+     * delivered or the outbox gives up on it, publishes its outcome and completes the
+     * caller's future, if anyone is still waiting; otherwise the entry stays pending and
+     * is retried on its own.
+     *
+     * @return Completes with whether the attempt delivered the entries
+     */
+    private CompletableFuture<Boolean> attemptFromOutbox(List<String> deliveryIds, List<Email> emails,
+                                                         Notification.NotificationPriority priority) {
+        return attempt(emails, priority).handle((results, error) -> {
+            boolean sent = error == null && isSent(results);
+            for (int i = 0; i < deliveryIds.size(); i++) {
+                String deliveryId = deliveryIds.get(i);
+                boolean finished = sent || !outbox.retryLater(deliveryId);
+                if (sent) {
+                    outbox.delivered(deliveryId);
+                }
+                if (!finished) {
+                    continue;
+                }
+
+                publishDelivered(emails.get(i), sent);
+                CompletableFuture<List<Notification>> delivery = awaitingDelivery.remove(deliveryId);
+                if (delivery == null) {
+                    // Entry recovered after a restart; nobody is waiting on it
+                    continue;
+                }
+                if (error != null) {
+                    delivery.completeExceptionally(error);
                 } else {
-                    log.warn("Failed to send notification via {} for email: {}",
-                            channel.getChannelType(), email.getSubject());
+                    delivery.complete(results);
                 }
-            } catch (Exception e) {
-                log.error("Error sending notification via {}", channel.getChannelType(), e);
-                notification.setStatus(Notification.NotificationStatus.FAILED);
             }
+            return sent;
+        });
+    }
+
+    private void publishDelivered(Email email, boolean sent) {
+        try {
+            eventPublisher.publishEvent(new NotificationDeliveredEvent(email, sent));
+        } catch (Exception e) {
+            log.error("Error handling notification outcome for email: {}", email.getId(), e);
+        }
+    }
+
+    private CompletableFuture<List<Notification>> attempt(List<Email> emails,
+                                                          Notification.NotificationPriority priority) {
+        List<Notification> results = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<Void> delivered = switch (strategyFor(priority)) {
+            case FAILOVER -> sendFrom(0, emails, priority, results);
+            case FANOUT -> sendToAll(emails, priority, results);
+            case HEDGED -> {
+                CompletableFuture<Void> finished = new CompletableFuture<>();
+                hedgeFrom(0, emails, priority, results, finished, new AtomicInteger());
+                yield finished;
+            }
+        };
+        return delivered.thenApply(ignored -> {
+            if (!isSent(results)) {
+                log.error("Failed to send notification via any channel for {}", describe(emails));
+            }
+            return results;
+        });
+    }
+
+    private static boolean isSent(List<Notification> results) {
+        return results.stream().anyMatch(n -> n.getStatus() == Notification.NotificationStatus.SENT);
+    }
+
+    /**
+     * Try the channels from {@code index} on in priority order (the order defined by
+     * {@code @Order}), each on its own workers, until one succeeds. Channels whose
+     * circuit is open are skipped without being called.
+     */
+    private CompletableFuture<Void> sendFrom(int index, List<Email> emails,
+                                             Notification.NotificationPriority priority, List<Notification> results) {
+        while (index < channels.size() && !isReady(channels.get(index))) {
+            index++;
+        }
+        if (index >= channels.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        NotificationChannel channel = channels.get(index);
+        int nextIndex = index + 1;
+        Notification notification = createNotification(emails, priority, channel);
+        results.add(notification);
 
+        return CompletableFuture.supplyAsync(() -> send(channel, emails, notification),
+                        channelWorkers.get(channel.getChannelType()).at(priority))
+                .thenCompose(sent -> sent ?
+                        CompletableFuture.completedFuture(null) :
+                        sendFrom(nextIndex, emails, priority, results));
+    }
+
+    /**
+     * Send through every ready channel concurrently
+     */
+    private CompletableFuture<Void> sendToAll(List<Email> emails, Notification.NotificationPriority priority,
+                                              List<Notification> results) {
+        List<CompletableFuture<Boolean>> sends = new ArrayList<>();
+        for (NotificationChannel channel : channels) {
+            if (!isReady(channel)) {
+                continue;
+            }
+            Notification notification = createNotification(emails, priority, channel);
             results.add(notification);
+            sends.add(CompletableFuture.supplyAsync(() -> send(channel, emails, notification),
+                    channelWorkers.get(channel.getChannelType()).at(priority)));
+        }
+        return CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Send through the next ready channel from {@code index} on, and move on to the one
+     * after it as soon as this one fails or hasn't answered within the hedge delay.
+     * {@code finished} completes on the first success, or once every started send has failed.
+     */
+    private void hedgeFrom(int index, List<Email> emails, Notification.NotificationPriority priority,
+                           List<Notification> results, CompletableFuture<Void> finished, AtomicInteger inFlight) {
+        boolean acquired = false;
+        while (index < channels.size() && !finished.isDone()) {
+            if (isReady(channels.get(index))) {
+                acquired = true;
+                break;
+            }
+            index++;
+        }
+        if (acquired && finished.isDone()) {
+            // Another send succeeded after this channel's breaker granted a permit; hand it back
+            circuitBreakers.get(channels.get(index).getChannelType()).release();
+        }
+        if (!acquired || finished.isDone()) {
+            if (inFlight.get() == 0) {
+                finished.complete(null);
+            }
+            return;
+        }
+
+        NotificationChannel channel = channels.get(index);
+        int nextIndex = index + 1;
+        Notification notification = createNotification(emails, priority, channel);
+        results.add(notification);
+        inFlight.incrementAndGet();
+
+        AtomicBoolean nextStarted = new AtomicBoolean();
+        Runnable startNext = () -> {
+            if (!finished.isDone() && nextStarted.compareAndSet(false, true)) {
+                hedgeFrom(nextIndex, emails, priority, results, finished, inFlight);
+            }
+        };
+
+        CompletableFuture.supplyAsync(() -> send(channel, emails, notification),
+                        channelWorkers.get(channel.getChannelType()).at(priority))
+                .whenComplete((sent, error) -> {
+                    if (Boolean.TRUE.equals(sent)) {
+                        finished.complete(null);
+                    } else {
+                        startNext.run();
+                    }
+                    if (inFlight.decrementAndGet() == 0) {
+                        finished.complete(null);
+                    }
+                });
+        CompletableFuture.delayedExecutor(hedgeDelayMillis, TimeUnit.MILLISECONDS).execute(startNext);
+    }
+
+    private DeliveryStrategy strategyFor(Notification.NotificationPriority priority) {
+        return switch (priority) {
+            case HIGH -> highPriorityDelivery;
+            case MEDIUM -> mediumPriorityDelivery;
+            case LOW -> lowPriorityDelivery;
+        };
+    }
+
+    private boolean isReady(NotificationChannel channel) {
+        if (!channel.isAvailable()) {
+            log.debug("Channel {} is not available", channel.getChannelType());
+            return false;
+        }
+        if (!circuitBreakers.get(channel.getChannelType()).tryAcquire()) {
+            log.debug("Skipping channel {}, circuit is open", channel.getChannelType());
+            return false;
         }
+        return true;
+    }
+
+    /**
+     * Send through a channel whose circuit breaker has already granted the request
+     */
+    private boolean send(NotificationChannel channel, List<Email> emails, Notification notification) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(channel.getChannelType());
+        try {
+            if (!rateLimiters.get(channel.getChannelType()).acquire(rateLimitMaxWaitMillis)) {
+                log.warn("Channel {} is over its rate limit, failing over", channel.getChannelType());
+                circuitBreaker.release();
+                notification.setStatus(Notification.NotificationStatus.FAILED);
+                return false;
+            }
 
-        if (results.stream().noneMatch(n -> n.getStatus() == Notification.NotificationStatus.SENT)) {
-            log.error("Failed to send notification via any channel for email: {}", email.getSubject());
+            boolean sent = emails.size() == 1 ?
+                    channel.sendNotification(emails.get(0)) :
+                    channel.sendDigest(emails);
+            notification.setStatus(sent ?
+                    Notification.NotificationStatus.SENT :
+                    Notification.NotificationStatus.FAILED);
+            recordOutcome(channel, sent);
+
+            if (sent) {
+                log.info("Successfully sent notification via {} for {}", channel.getChannelType(), describe(emails));
+            } else {
+                log.warn("Failed to send notification via {} for {}", channel.getChannelType(), describe(emails));
+            }
+            return sent;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            circuitBreaker.release();
+            notification.setStatus(Notification.NotificationStatus.FAILED);
+            return false;
+        } catch (Exception e) {
+            log.error("Error sending notification via {}", channel.getChannelType(), e);
+            notification.setStatus(Notification.NotificationStatus.FAILED);
+            recordOutcome(channel, false);
+            return false;
         }
+    }
 
-        return results;
+    private void recordOutcome(NotificationChannel channel, boolean sent) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(channel.getChannelType());
+        if (sent) {
+            circuitBreaker.onSuccess();
+            return;
+        }
+        circuitBreaker.onFailure();
+        if (circuitBreaker.getState() == CircuitBreaker.State.OPEN) {
+            log.warn("Circuit for channel {} is open, retrying it in {}s", channel.getChannelType(), circuitOpenSeconds);
+        }
+    }
+
+    private Notification createNotification(List<Email> emails, Notification.NotificationPriority priority,
+                                            NotificationChannel channel) {
+        return Notification.builder()
+                .id(UUID.randomUUID().toString())
+                .title(emails.size() == 1 ? emails.get(0).getSubject() : "Digest of " + emails.size() + " emails")
+                .message(emails.stream().map(this::createNotificationMessage).collect(Collectors.joining("\n\n")))
+                .channel(channel.getChannelType())
+                .priority(priority)
+                .createdAt(LocalDateTime.now())
+                .status(Notification.NotificationStatus.PENDING)
+                .build();
     }
 
     private String createNotificationMessage(Email email) {
@@ -88,4 +554,17 @@ public class NotificationServiceImpl implements NotificationService {
                 email.getSubject(),
                 email.getReceivedAt());
     }
-}
\ No newline at end of file
+
+    private static String describe(List<Email> emails) {
+        return emails.size() == 1 ? "email: " + emails.get(0).getSubject() : "digest of " + emails.size() + " emails";
+    }
+
+    private static ThreadFactory workerThreadFactory(Notification.NotificationChannel type) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "notify-" + type.name().toLowerCase() + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package com.notifysync.notifysync.service.notification;
+
+import com.notifysync.notifysync.model.Notification;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed pool of worker threads that runs queued work earliest deadline first.
+ * <p>
+ * Work is due its priority's latency budget after it is queued, so a HIGH notification
+ * queued behind a backlog of MEDIUM and LOW ones is the next to run, while lower
+ * priorities still go out once they have waited out their own, longer budget rather
+ * than being starved. Work that starts after its deadline is logged and counted.
+ */
+@Slf4j
+public class PriorityWorkerPool extends ThreadPoolExecutor {
+
+    private final Map<Notification.NotificationPriority, Long> budgetNanos;
+    // Created on first use rather than in the constructor, so no lambda captures a half-built pool
+    private final ConcurrentMap<Notification.NotificationPriority, Executor> executors = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+
+    /**
+     * @param budgetMillis How long work of each priority may wait in the queue
+     */
+    public PriorityWorkerPool(int threads, ThreadFactory threadFactory,
+                              Map<Notification.NotificationPriority, Long> budgetMillis) {
+        super(threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), threadFactory);
+
+        budgetNanos = new EnumMap<>(Notification.NotificationPriority.class);
+        for (Notification.NotificationPriority priority : Notification.NotificationPriority.values()) {
+            budgetNanos.put(priority, TimeUnit.MILLISECONDS.toNanos(budgetMillis.getOrDefault(priority, 0L)));
+        }
+    }
+
+    /**
+     * @return An executor that queues work at this priority
+     */
+    public Executor at(Notification.NotificationPriority priority) {
+        return executors.computeIfAbsent(priority, p -> command -> execute(new QueuedTask(command, p)));
+    }
+
+    /**
+     * Number of tasks that started after their latency budget ran out
+     */
+    public long getOverBudgetCount() {
+        return overBudget.get();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        // Work queued without a priority is due right away
+        super.execute(command instanceof QueuedTask ? command : new QueuedTask(command, null));
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable runnable) {
+        if (runnable instanceof QueuedTask task && task.priority != null) {
+            long lateNanos = System.nanoTime() - task.deadline;
+            if (lateNanos > 0) {
+                overBudget.incrementAndGet();
+                log.warn("{} notification waited {}ms past its {}ms latency budget", task.priority,
+                        TimeUnit.NANOSECONDS.toMillis(lateNanos), TimeUnit.NANOSECONDS.toMillis(budgetNanos.get(task.priority)));
+            }
+        }
+        super.beforeExecute(thread, runnable);
+    }
+
+    private class QueuedTask implements Runnable, Comparable<QueuedTask> {
+        private final Runnable command;
+        private final Notification.NotificationPriority priority;
+        private final long deadline;
+        // Keeps tasks with the same deadline in the order they were queued
+        private final long order = sequence.getAndIncrement();
+
+        private QueuedTask(Runnable command, Notification.NotificationPriority priority) {
+            this.command = command;
+            this.priority = priority;
+            this.deadline = System.nanoTime() + (priority == null ? 0 : budgetNanos.get(priority));
+        }
+
+        @Override
+        public void run() {
+            command.run();
+        }
+
+        @Override
+        public int compareTo(QueuedTask other) {
+            int byDeadline = Long.compare(deadline - other.deadline, 0);
+            return byDeadline != 0 ? byDeadline : Long.compare(order, other.order);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.notifysync.notifysync.service.notification;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token-bucket rate limiter. Tokens accrue at {@code permitsPerSecond} up to
+ * {@code burst}; each send takes one. A caller that finds the bucket empty reserves
+ * the next token and waits for it, unless that would take longer than it is willing
+ * to wait.
+ */
+public class TokenBucket {
+
+    private final double permitsPerSecond;
+    private final double burst;
+
+    // Guarded by this; may go negative while callers wait on reserved tokens
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Take a token, waiting for one if necessary
+     *
+     * @param maxWaitMillis The longest the caller is willing to wait
+     * @return false if no token would be available in time; nothing is taken then
+     */
+    public boolean acquire(long maxWaitMillis) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - refilledAt) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+            refilledAt = now;
+
+            waitNanos = tokens >= 1 ? 0 : (long) ((1 - tokens) * TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+            if (waitNanos > TimeUnit.MILLISECONDS.toNanos(maxWaitMillis)) {
+                return false;
+            }
+            tokens -= 1;
+        }
+
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return true;
+    }
+}
@@ -1,19 +1,28 @@
 package com.notifysync.notifysync.service.processor;
 
 import com.notifysync.notifysync.model.Email;
+import com.notifysync.notifysync.model.Notification;
+import com.notifysync.notifysync.service.dedup.NearDuplicateDetector;
+import com.notifysync.notifysync.service.dedup.SeenMessageFilter;
 import com.notifysync.notifysync.service.email.EmailService;
 import com.notifysync.notifysync.service.email.GmailCategoryService;
-import com.notifysync.notifysync.service.filter.EmailFilterService;
+import com.notifysync.notifysync.service.filter.ClassificationCascade;
+import com.notifysync.notifysync.service.notification.DigestSentEvent;
+import com.notifysync.notifysync.service.notification.NotificationDeliveredEvent;
 import com.notifysync.notifysync.service.notification.NotificationService;
 import com.notifysync.notifysync.service.tracking.EmailTrackingService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @RequiredArgsConstructor
@@ -21,10 +30,12 @@ import java.util.List;
 public class EmailProcessorServiceImpl implements EmailProcessorService {
 
     private final EmailService emailService;
-    private final EmailFilterService emailFilterService;
+    private final ClassificationCascade classificationCascade;
     private final NotificationService notificationService;
     private final GmailCategoryService gmailCategoryService;
     private final EmailTrackingService emailTrackingService;
+    private final NearDuplicateDetector nearDuplicateDetector;
+    private final SeenMessageFilter seenMessageFilter;
 
     @Value("${notifysync.email.max-emails-per-fetch:10}")
     private int maxEmailsPerFetch;
@@ -35,8 +46,18 @@ public class EmailProcessorServiceImpl implements EmailProcessorService {
     @Value("${notifysync.email.thread-deduplication-window-hours:2}")
     private int threadDeduplicationWindowHours;
 
-    // Track notifications sent today
-    private int notificationsSentToday = 0;
+    // Track notifications sent today; a slot is reserved at dispatch and given back if delivery fails.
+    // Digested emails share the one slot taken when their digest is sent (see onDigestSent)
+    private final AtomicInteger notificationsSentToday = new AtomicInteger();
+
+    // Bumped on every reset, so a slot reserved before midnight isn't given back to the new day
+    private long notificationCountPeriod;
+
+    // Threads with a notification still being delivered, which the tracking store doesn't know about yet
+    private final Set<String> threadsInFlight = ConcurrentHashMap.newKeySet();
+
+    // Fingerprints of notifications still being delivered, which the near-duplicate detector only learns on success
+    private final Set<Long> fingerprintsInFlight = ConcurrentHashMap.newKeySet();
     private LocalDateTime notificationCountResetDate = LocalDateTime.now().plusDays(1).withHour(0).withMinute(0);
 
     @Override
@@ -54,117 +75,196 @@ public class EmailProcessorServiceImpl implements EmailProcessorService {
 
             int processedCount = 0;
             int importantCount = 0;
-            int notifiedCount = 0;
+            int dispatchedCount = 0;
 
             for (Email email : recentEmails) {
                 try {
-                    // Skip if email already processed
-                    if (emailTrackingService.isEmailProcessed(email.getId())) {
+                    // Skip if email already processed; the seen filter also covers IDs the exact store has expired
+                    if (seenMessageFilter.mightHaveSeen(email.getId()) ||
+                            emailTrackingService.isEmailProcessed(email.getId())) {
                         log.debug("Skipping already processed email: {}", email.getSubject());
                         continue;
                     }
 
                     // Skip if not in PRIMARY or UPDATES category
-                    if (gmailCategoryService.isInAllowedCategory(email.getId())) {
+                    if (gmailCategoryService.isInAllowedCategory(email)) {
                         log.debug("Skipping email not in PRIMARY or UPDATES category: {}", email.getSubject());
-                        emailTrackingService.recordProcessedEmail(
-                                email.getId(),
-                                email.getThreadId(),
-                                email.getSubject(),
-                                email.getSenderEmail(),
-                                false,
-                                false
-                        );
+                        recordProcessed(email, false, false);
                         continue;
                     }
 
                     // Check for thread-based duplicates
                     if (email.getThreadId() != null && !email.getThreadId().isEmpty() &&
-                            emailTrackingService.wasThreadRecentlyProcessed(email.getThreadId(), threadDeduplicationWindowHours)) {
+                            (threadsInFlight.contains(email.getThreadId()) ||
+                                    emailTrackingService.wasThreadRecentlyProcessed(email.getThreadId(), threadDeduplicationWindowHours))) {
                         log.debug("Skipping email in recently notified thread: {}", email.getSubject());
-                        emailTrackingService.recordProcessedEmail(
-                                email.getId(),
-                                email.getThreadId(),
-                                email.getSubject(),
-                                email.getSenderEmail(),
-                                true, // Mark as important but no notification sent
-                                false
-                        );
+                        // Mark as important but no notification sent
+                        recordProcessed(email, true, false);
                         continue;
                     }
 
                     processedCount++;
 
-                    // Check if email is important
-                    boolean isImportant = emailFilterService.isImportantEmail(email);
+                    // Check if email is important, fetching the body only if headers and snippet don't decide
+                    boolean isImportant = classificationCascade.isImportant(email);
                     email.setImportant(isImportant);
 
                     if (isImportant) {
                         importantCount++;
 
+                        // Check for near-duplicates of recent notifications (e.g. repeated alerts in new threads)
+                        long fingerprint = nearDuplicateDetector.fingerprint(email);
+                        if (isNearDuplicateInFlight(fingerprint) || nearDuplicateDetector.isRecentDuplicate(fingerprint)) {
+                            log.info("Skipping near-duplicate of a recent notification: {}", email.getSubject());
+                            recordProcessed(email, true, false);
+                            continue;
+                        }
+
                         // Check notification rate limit
-                        if (notificationsSentToday < maxNotificationsPerDay) {
-                            // Send notification
-                            boolean notificationSent = !notificationService.sendNotifications(email).isEmpty();
-
-                            if (notificationSent) {
-                                notifiedCount++;
-                                notificationsSentToday++;
-                                log.info("Sent notification for important email: {}", email.getSubject());
+                        if (notificationsSentToday.get() < maxNotificationsPerDay) {
+                            Notification.NotificationPriority priority = classificationCascade.priorityOf(email);
+                            boolean digested = notificationService.isDigested(priority);
+                            if (!digested) {
+                                notificationsSentToday.incrementAndGet();
                             }
-
-                            // Record processed email
-                            emailTrackingService.recordProcessedEmail(
-                                    email.getId(),
-                                    email.getThreadId(),
-                                    email.getSubject(),
-                                    email.getSenderEmail(),
-                                    true,
-                                    notificationSent
-                            );
+                            dispatch(email, fingerprint, priority, digested);
+                            dispatchedCount++;
                         } else {
                             log.info("Daily notification limit reached. Skipping notification for: {}", email.getSubject());
-                            emailTrackingService.recordProcessedEmail(
-                                    email.getId(),
-                                    email.getThreadId(),
-                                    email.getSubject(),
-                                    email.getSenderEmail(),
-                                    true,
-                                    false
-                            );
+                            recordProcessed(email, true, false);
                         }
                     } else {
                         // Record non-important email
-                        emailTrackingService.recordProcessedEmail(
-                                email.getId(),
-                                email.getThreadId(),
-                                email.getSubject(),
-                                email.getSenderEmail(),
-                                false,
-                                false
-                        );
+                        recordProcessed(email, false, false);
                     }
                 } catch (Exception e) {
                     log.error("Error processing email: {}", email.getId(), e);
                 }
             }
 
-            log.info("Completed processing emails: processed={}, important={}, notified={}",
-                    processedCount, importantCount, notifiedCount);
+            emailTrackingService.flush();
+
+            log.info("Completed processing emails: processed={}, important={}, dispatched={}",
+                    processedCount, importantCount, dispatchedCount);
+            log.debug("Classification tiers: {}", classificationCascade.getStats());
 
         } catch (Exception e) {
             log.error("Error during email processing", e);
         }
     }
 
+    /**
+     * Hand an important email to the notification workers without waiting for delivery.
+     * It is recorded as processed straight away so the next poll doesn't dispatch it again,
+     * and recorded again as notified once a channel has delivered it (see
+     * {@link #onNotificationDelivered}).
+     */
+    private void dispatch(Email email, long fingerprint, Notification.NotificationPriority priority,
+                          boolean digested) {
+        String threadId = email.getThreadId();
+        if (threadId != null && !threadId.isEmpty()) {
+            threadsInFlight.add(threadId);
+        }
+        fingerprintsInFlight.add(fingerprint);
+        long period = currentNotificationCountPeriod();
+        recordProcessed(email, true, false);
+
+        log.debug("Dispatching {} notification for email: {}", priority, email.getSubject());
+        notificationService.dispatchNotifications(email, priority).whenComplete((notifications, error) -> {
+            try {
+                boolean sent = error == null && notifications.stream()
+                        .anyMatch(n -> n.getStatus() == Notification.NotificationStatus.SENT);
+
+                // A delivered notification was already recorded by onNotificationDelivered
+                if (!sent) {
+                    if (!digested) {
+                        releaseNotificationSlot(period);
+                    }
+                    if (error != null) {
+                        log.error("Error dispatching notification for email: {}", email.getId(), error);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("Error recording notification result for email: {}", email.getId(), e);
+            } finally {
+                if (threadId != null) {
+                    threadsInFlight.remove(threadId);
+                }
+                fingerprintsInFlight.remove(fingerprint);
+            }
+        });
+    }
+
+    /**
+     * Record a delivered notification as notified and remember its fingerprint. Also
+     * covers outbox entries delivered after a restart, which no dispatch is waiting on.
+     */
+    @EventListener
+    public void onNotificationDelivered(NotificationDeliveredEvent event) {
+        if (!event.sent()) {
+            return;
+        }
+        Email email = event.email();
+        recordProcessed(email, true, true);
+        nearDuplicateDetector.recordNotified(nearDuplicateDetector.fingerprint(email));
+        log.info("Sent notification for important email: {}", email.getSubject());
+    }
+
+    /**
+     * Count a delivered digest as a single notification, however many emails it combined
+     */
+    @EventListener
+    public void onDigestSent(DigestSentEvent event) {
+        notificationsSentToday.incrementAndGet();
+        log.debug("Counted digest of {} emails as one notification", event.emails());
+    }
+
+    /**
+     * Record a processed email in the tracking store and the seen filter
+     */
+    private void recordProcessed(Email email, boolean wasImportant, boolean wasNotified) {
+        emailTrackingService.recordProcessedEmail(
+                email.getId(),
+                email.getThreadId(),
+                email.getSubject(),
+                email.getSenderEmail(),
+                wasImportant,
+                wasNotified
+        );
+        seenMessageFilter.recordSeen(email.getId());
+    }
+
+    private boolean isNearDuplicateInFlight(long fingerprint) {
+        for (long inFlight : fingerprintsInFlight) {
+            if (nearDuplicateDetector.isNearDuplicate(fingerprint, inFlight)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized long currentNotificationCountPeriod() {
+        return notificationCountPeriod;
+    }
+
+    /**
+     * Give back a slot reserved for a notification that was not delivered, unless the
+     * counter has been reset since it was reserved
+     */
+    private synchronized void releaseNotificationSlot(long period) {
+        if (period == notificationCountPeriod) {
+            notificationsSentToday.decrementAndGet();
+        }
+    }
+
     /**
      * Reset the daily notification counter if the day has changed
      */
-    private void resetDailyNotificationCounterIfNeeded() {
+    private synchronized void resetDailyNotificationCounterIfNeeded() {
         LocalDateTime now = LocalDateTime.now();
         if (now.isAfter(notificationCountResetDate)) {
-            log.info("Resetting daily notification counter from {}", notificationsSentToday);
-            notificationsSentToday = 0;
+            log.info("Resetting daily notification counter from {}", notificationsSentToday.getAndSet(0));
+            notificationCountPeriod++;
             notificationCountResetDate = now.plusDays(1).withHour(0).withMinute(0);
         }
     }
@@ -0,0 +1,75 @@
+package com.notifysync.notifysync.service.routing;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notifysync.notifysync.model.Email;
+import com.notifysync.notifysync.model.Notification;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the subscribers an email should also be sent to.
+ * <p>
+ * Subscribers are read from a JSON array of {@link RoutingRule}s in {@code routing.file}
+ * and compiled into a {@link RoutingIndex}. The file is checked for changes every
+ * {@code reload-check-seconds}; a file that fails to load leaves the previous index in
+ * place. Without a file no email is routed and notifications only go to the configured
+ * destination of each channel.
+ */
+@Service
+@Slf4j
+public class NotificationRouter {
+
+    @Value("${notifysync.routing.file:}")
+    private String routingFile;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private volatile RoutingIndex index = RoutingIndex.EMPTY;
+    private long loadedModifiedAt = -1;
+
+    @PostConstruct
+    public void init() {
+        reloadIfChanged();
+    }
+
+    /**
+     * @return The addresses the email should be sent to, by channel; empty if none
+     */
+    public Map<Notification.NotificationChannel, List<String>> route(Email email) {
+        return index.route(email);
+    }
+
+    @Scheduled(fixedDelayString = "${notifysync.routing.reload-check-seconds:60}000")
+    public synchronized void reloadIfChanged() {
+        if (routingFile == null || routingFile.isEmpty()) {
+            return;
+        }
+
+        Path file = Paths.get(routingFile);
+        try {
+            long modifiedAt = Files.getLastModifiedTime(file).toMillis();
+            if (modifiedAt == loadedModifiedAt) {
+                return;
+            }
+            // Don't retry a broken file until it changes again
+            loadedModifiedAt = modifiedAt;
+            List<RoutingRule> rules = objectMapper.readValue(file.toFile(), new TypeReference<>() {
+            });
+            index = RoutingIndex.compile(rules);
+            log.info("Loaded {} routing rules for {} recipients from {}", rules.size(), index.size(), file);
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("Failed to load routing rules from {}, keeping the previous ones", file, e);
+        }
+    }
+}
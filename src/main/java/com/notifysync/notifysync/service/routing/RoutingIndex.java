@@ -0,0 +1,209 @@
+package com.notifysync.notifysync.service.routing;
+
+import com.notifysync.notifysync.model.Email;
+import com.notifysync.notifysync.model.Notification;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Routing rules compiled into hash lookups.
+ * <p>
+ * Every condition of every rule is a key in one of four maps pointing at the
+ * recipients it selects, so routing an email costs a lookup per property of the email
+ * (its mailbox, each level of its sender's domain, each label, each word or run of
+ * words in the subject and snippet) no matter how many rules there are. A recipient
+ * named by several rules is sent one notification.
+ */
+public class RoutingIndex {
+
+    public static final RoutingIndex EMPTY = compile(List.of());
+
+    private final Notification.NotificationChannel[] channels;
+    private final String[] addresses;
+    private final Map<String, int[]> byMailbox;
+    private final Map<String, int[]> bySenderDomain;
+    private final Map<String, int[]> byLabel;
+    private final Map<String, int[]> byKeyword;
+    private final int maxKeywordWords;
+
+    private RoutingIndex(Notification.NotificationChannel[] channels, String[] addresses,
+                         Map<String, int[]> byMailbox, Map<String, int[]> bySenderDomain,
+                         Map<String, int[]> byLabel, Map<String, int[]> byKeyword, int maxKeywordWords) {
+        this.channels = channels;
+        this.addresses = addresses;
+        this.byMailbox = byMailbox;
+        this.bySenderDomain = bySenderDomain;
+        this.byLabel = byLabel;
+        this.byKeyword = byKeyword;
+        this.maxKeywordWords = maxKeywordWords;
+    }
+
+    /**
+     * @throws IllegalArgumentException If a rule has no channel or address
+     */
+    public static RoutingIndex compile(List<RoutingRule> rules) {
+        Map<String, Integer> recipientIds = new LinkedHashMap<>();
+        List<Notification.NotificationChannel> channels = new ArrayList<>();
+        List<String> addresses = new ArrayList<>();
+        Map<String, Set<Integer>> byMailbox = new HashMap<>();
+        Map<String, Set<Integer>> bySenderDomain = new HashMap<>();
+        Map<String, Set<Integer>> byLabel = new HashMap<>();
+        Map<String, Set<Integer>> byKeyword = new HashMap<>();
+        int maxKeywordWords = 0;
+
+        for (RoutingRule rule : rules) {
+            if (rule.getChannel() == null || rule.getAddress() == null || rule.getAddress().isBlank()) {
+                throw new IllegalArgumentException("Routing rule needs a channel and an address: " + rule);
+            }
+            String address = rule.getAddress().trim();
+            int recipient = recipientIds.computeIfAbsent(rule.getChannel() + ":" + address, key -> {
+                channels.add(rule.getChannel());
+                addresses.add(address);
+                return addresses.size() - 1;
+            });
+
+            addAll(byMailbox, rule.getMailboxes(), mailbox -> mailbox.trim().toLowerCase(Locale.ROOT), recipient);
+            addAll(bySenderDomain, rule.getSenderDomains(), RoutingIndex::normalizeDomain, recipient);
+            addAll(byLabel, rule.getLabels(), String::trim, recipient);
+            addAll(byKeyword, rule.getKeywords(), keyword -> String.join(" ", words(keyword)), recipient);
+            if (rule.getKeywords() != null) {
+                for (String keyword : rule.getKeywords()) {
+                    maxKeywordWords = Math.max(maxKeywordWords, keyword == null ? 0 : words(keyword).size());
+                }
+            }
+        }
+
+        return new RoutingIndex(
+                channels.toArray(new Notification.NotificationChannel[0]), addresses.toArray(new String[0]),
+                freeze(byMailbox), freeze(bySenderDomain), freeze(byLabel), freeze(byKeyword), maxKeywordWords);
+    }
+
+    /**
+     * Number of distinct recipients
+     */
+    public int size() {
+        return addresses.length;
+    }
+
+    /**
+     * @return The addresses this email should be sent to, by channel
+     */
+    public Map<Notification.NotificationChannel, List<String>> route(Email email) {
+        Map<Notification.NotificationChannel, List<String>> routed = new EnumMap<>(Notification.NotificationChannel.class);
+        if (addresses.length == 0) {
+            return routed;
+        }
+
+        BitSet matched = new BitSet(addresses.length);
+        if (email.getMailbox() != null) {
+            mark(matched, byMailbox.get(email.getMailbox().toLowerCase(Locale.ROOT)));
+        }
+        if (email.getSenderEmail() != null && !bySenderDomain.isEmpty()) {
+            // Try the full domain and then each parent, so example.com also covers mail.example.com
+            String domain = normalizeDomain(email.getSenderEmail());
+            while (!domain.isEmpty()) {
+                mark(matched, bySenderDomain.get(domain));
+                int dot = domain.indexOf('.');
+                domain = dot < 0 ? "" : domain.substring(dot + 1);
+            }
+        }
+        if (email.getLabelIds() != null && !byLabel.isEmpty()) {
+            for (String label : email.getLabelIds()) {
+                mark(matched, byLabel.get(label));
+            }
+        }
+        if (!byKeyword.isEmpty()) {
+            markKeywords(matched, email.getSubject());
+            markKeywords(matched, email.getSnippet());
+        }
+
+        for (int id = matched.nextSetBit(0); id >= 0; id = matched.nextSetBit(id + 1)) {
+            routed.computeIfAbsent(channels[id], channel -> new ArrayList<>()).add(addresses[id]);
+        }
+        return routed;
+    }
+
+    private void markKeywords(BitSet matched, String text) {
+        if (text == null) {
+            return;
+        }
+        List<String> words = words(text);
+        StringBuilder phrase = new StringBuilder();
+        for (int start = 0; start < words.size(); start++) {
+            phrase.setLength(0);
+            for (int end = start; end < words.size() && end - start < maxKeywordWords; end++) {
+                if (end > start) {
+                    phrase.append(' ');
+                }
+                phrase.append(words.get(end));
+                mark(matched, byKeyword.get(phrase.toString()));
+            }
+        }
+    }
+
+    private static void mark(BitSet matched, int[] recipients) {
+        if (recipients != null) {
+            for (int recipient : recipients) {
+                matched.set(recipient);
+            }
+        }
+    }
+
+    /**
+     * Lower-cased runs of letters and digits
+     */
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Lower-cased domain of an address or domain, without a leading {@code @} or {@code .}
+     */
+    private static String normalizeDomain(String value) {
+        String domain = value.substring(value.lastIndexOf('@') + 1).trim().toLowerCase(Locale.ROOT);
+        while (domain.startsWith(".")) {
+            domain = domain.substring(1);
+        }
+        return domain;
+    }
+
+    private static void addAll(Map<String, Set<Integer>> index, List<String> values,
+                               Function<String, String> normalize, int recipient) {
+        if (values == null) {
+            return;
+        }
+        for (String value : values) {
+            String key = value == null ? "" : normalize.apply(value);
+            if (!key.isEmpty()) {
+                index.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(recipient);
+            }
+        }
+    }
+
+    private static Map<String, int[]> freeze(Map<String, Set<Integer>> index) {
+        Map<String, int[]> frozen = new HashMap<>(index.size() * 4 / 3 + 1);
+        index.forEach((key, recipients) -> frozen.put(key, recipients.stream().mapToInt(Integer::intValue).toArray()));
+        return frozen;
+    }
+}
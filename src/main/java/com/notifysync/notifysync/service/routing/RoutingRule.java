@@ -0,0 +1,31 @@
+package com.notifysync.notifysync.service.routing;
+
+import com.notifysync.notifysync.model.Notification;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One subscriber and the emails they want to hear about, as read from the routing file.
+ * The rule matches an email when any of its conditions does.
+ */
+@Data
+public class RoutingRule {
+
+    private Notification.NotificationChannel channel;
+
+    // Telegram chat ID or WhatsApp number
+    private String address;
+
+    // Addresses the email was delivered to
+    private List<String> mailboxes;
+
+    // Sender domains, including their subdomains
+    private List<String> senderDomains;
+
+    // Words or phrases in the subject or snippet
+    private List<String> keywords;
+
+    // Gmail label IDs
+    private List<String> labels;
+}
@@ -0,0 +1,195 @@
+package com.notifysync.notifysync.service.tracking;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+/**
+ * Append-only file of length-prefixed binary records, addressed by their byte offset.
+ * Records that are no longer needed are dropped by {@link #compact}, which moves the
+ * rest to new offsets.
+ */
+@Slf4j
+public class AppendOnlySegment implements Closeable {
+
+    private static final int LENGTH_BYTES = 4;
+
+    private final Path file;
+    private FileChannel channel;
+    private long end;
+    private long recordCount;
+
+    public AppendOnlySegment(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.end = validLength();
+        if (end < channel.size()) {
+            log.warn("Truncating torn record at the end of {}", file);
+            channel.truncate(end);
+        }
+    }
+
+    /**
+     * Append a record
+     *
+     * @return The offset to read the record back from
+     */
+    public synchronized long append(byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH_BYTES + record.length);
+        buffer.putInt(record.length).put(record).flip();
+
+        long offset = end;
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        end = position;
+        recordCount++;
+        return offset;
+    }
+
+    /**
+     * Read the record at an offset returned by {@link #append}
+     */
+    public synchronized byte[] read(long offset) throws IOException {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(LENGTH_BYTES);
+        readFully(lengthBuffer, offset);
+        int length = lengthBuffer.getInt(0);
+        if (length < 0 || offset + LENGTH_BYTES + length > end) {
+            throw new IOException("Invalid record offset " + offset + " in " + file);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(length);
+        readFully(record, offset + LENGTH_BYTES);
+        return record.array();
+    }
+
+    /**
+     * Visit every record in append order with its offset
+     */
+    public void forEach(BiConsumer<Long, byte[]> visitor) throws IOException {
+        long offset = 0;
+        long limit;
+        synchronized (this) {
+            limit = end;
+        }
+        while (offset < limit) {
+            byte[] record = read(offset);
+            visitor.accept(offset, record);
+            offset += LENGTH_BYTES + record.length;
+        }
+    }
+
+    /**
+     * Rewrite the file with only the records {@code keep} accepts, in their original order.
+     * The new file is synced before it replaces the old one.
+     *
+     * @param keep Given each record's offset and content
+     * @param moved Receives the old and new offset of every record kept, once the new file is in place
+     * @return The number of records dropped
+     */
+    public synchronized long compact(BiPredicate<Long, byte[]> keep, BiConsumer<Long, Long> moved) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".compact");
+        FileChannel compacted = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long newEnd = 0;
+        List<long[]> moves = new ArrayList<>();
+        try {
+            long offset = 0;
+            while (offset < end) {
+                byte[] record = read(offset);
+                if (keep.test(offset, record)) {
+                    ByteBuffer buffer = ByteBuffer.allocate(LENGTH_BYTES + record.length);
+                    buffer.putInt(record.length).put(record).flip();
+                    long position = newEnd;
+                    while (buffer.hasRemaining()) {
+                        position += compacted.write(buffer, position);
+                    }
+                    moves.add(new long[]{offset, newEnd});
+                    newEnd = position;
+                }
+                offset += LENGTH_BYTES + record.length;
+            }
+            compacted.force(false);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            compacted.close();
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+
+        // The open channel now refers to the renamed file
+        channel.close();
+        channel = compacted;
+        long dropped = recordCount - moves.size();
+        end = newEnd;
+        recordCount = moves.size();
+        for (long[] move : moves) {
+            moved.accept(move[0], move[1]);
+        }
+        return dropped;
+    }
+
+    public synchronized long size() {
+        return end;
+    }
+
+    /**
+     * Number of records in the file, including ones no longer referenced
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    public synchronized void flush() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + file);
+            }
+        }
+    }
+
+    /**
+     * Walk the length prefixes to find where the last complete record ends
+     */
+    private long validLength() throws IOException {
+        long size = channel.size();
+        long offset = 0;
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(LENGTH_BYTES);
+        while (offset + LENGTH_BYTES <= size) {
+            lengthBuffer.clear();
+            while (lengthBuffer.hasRemaining()) {
+                if (channel.read(lengthBuffer, offset + lengthBuffer.position()) < 0) break;
+            }
+            int length = lengthBuffer.getInt(0);
+            if (length < 0 || offset + LENGTH_BYTES + length > size) {
+                break;
+            }
+            offset += LENGTH_BYTES + length;
+            recordCount++;
+        }
+        return offset;
+    }
+}
@@ -1,7 +1,5 @@
 package com.notifysync.notifysync.service.tracking;
 
-import java.util.List;
-
 /**
  * Service for tracking processed emails to avoid duplicates
  */
@@ -49,7 +47,14 @@ public interface EmailTrackingService {
      * Get the recent feedback count
      *
      * @param senderEmail The sender's email address
-     * @return A pair containing the positive feedback count and total feedback count
+     * @return The positive feedback count and total feedback count
+     */
+    SenderFeedbackStats getRecentFeedbackForSender(String senderEmail);
+
+    /**
+     * Persist records buffered since the last flush. Called once per poll cycle;
+     * stores that write through immediately need not override it.
      */
-    List<Object> getRecentFeedbackForSender(String senderEmail);
+    default void flush() {
+    }
 }
\ No newline at end of file
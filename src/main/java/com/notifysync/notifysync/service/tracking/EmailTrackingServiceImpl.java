@@ -2,72 +2,312 @@ package com.notifysync.notifysync.service.tracking;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Data;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
-import java.io.File;
+import jakarta.annotation.PreDestroy;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Service
+@ConditionalOnProperty(name = "notifysync.tracking.store", havingValue = "file", matchIfMissing = true)
+@RequiredArgsConstructor
 @Slf4j
 public class EmailTrackingServiceImpl implements EmailTrackingService {
 
+    private final ApplicationEventPublisher eventPublisher;
+
     @Value("${notifysync.tracking.storage-file:processed_emails.json}")
     private String storageFile;
 
+    @Value("${notifysync.tracking.journal.durability:ASYNC}")
+    private TrackingJournal.Durability journalDurability;
+
+    @Value("${notifysync.tracking.journal.group-commit-records:32}")
+    private int groupCommitRecords;
+
+    @Value("${notifysync.tracking.journal.group-commit-millis:200}")
+    private long groupCommitMillis;
+
+    @Value("${notifysync.tracking.expected-processed-emails:10000}")
+    private int expectedProcessedEmails;
+
+    @Value("${notifysync.tracking.retention.processed-hours:24}")
+    private long processedRetentionHours;
+
+    @Value("${notifysync.tracking.retention.thread-hours:24}")
+    private long threadRetentionHours;
+
+    // Feedback counts toward a sender's stats for exactly as long as it is kept
+    @Value("${notifysync.tracking.retention.feedback-days:30}")
+    private int feedbackRetentionDays;
+
+    @Value("${notifysync.tracking.store-subjects:true}")
+    private boolean storeSubjects;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final Map<String, ProcessedEmailInfo> processedEmails = new ConcurrentHashMap<>();
-    private final Map<String, List<UserFeedback>> userFeedback = new ConcurrentHashMap<>();
+    // Every processed ID, keyed by the parsed ID, with its expiry time
+    private TimestampIndex processedIds;
+    // Senders and thread IDs repeat heavily, so records refer to them by handle
+    private final StringDictionary senders = new StringDictionary();
+    private final StringDictionary threads = new StringDictionary();
+    // What feedback needs to know about each processed email, keyed by the parsed ID
+    private final Map<Long, ProcessedEmail> processedEmails = new ConcurrentHashMap<>();
+    // Most recent notification time per thread, keyed by the parsed thread ID
+    private TimestampIndex notifiedThreads;
+    private ExpiryQueue processedExpiry;
+    private ExpiryQueue threadExpiry;
+    // Feedback by sender handle; each list holds one reference to its sender
+    private final Map<Integer, List<FeedbackEntry>> userFeedback = new ConcurrentHashMap<>();
+    private SenderReputationIndex senderReputation;
+    private TrackingJournal journal;
 
     @PostConstruct
     public void init() {
+        senderReputation = new SenderReputationIndex(feedbackRetentionDays);
+        processedIds = new OpenAddressingTimestampIndex(expectedProcessedEmails);
+        notifiedThreads = new OpenAddressingTimestampIndex(expectedProcessedEmails / 4);
+        processedExpiry = new ExpiryQueue(expectedProcessedEmails);
+        threadExpiry = new ExpiryQueue(expectedProcessedEmails / 4);
+        long snapshotGeneration = 0;
+        boolean importedJson = false;
+
         try {
             // Create necessary ObjectMapper modules for Java 8 date/time
             objectMapper.findAndRegisterModules();
 
             // Load existing data if available
-            File file = new File(storageFile);
-            if (file.exists() && file.length() > 0) {
-                StorageData data = objectMapper.readValue(file, StorageData.class);
+            Path file = Paths.get(storageFile);
+            if (Files.exists(file) && Files.size(file) > 0) {
+                StorageData data;
+                if (TrackingSnapshotCodec.isBinary(file)) {
+                    try (InputStream in = Files.newInputStream(file)) {
+                        data = TrackingSnapshotCodec.read(in, Files.size(file));
+                    }
+                } else {
+                    // Snapshots written before the binary format; rewritten as binary below
+                    data = objectMapper.readValue(file.toFile(), StorageData.class);
+                    importedJson = true;
+                }
+                snapshotGeneration = data.getJournalGeneration();
+
+                if (data.getProcessedIds() != null && data.getProcessedIdExpiries() != null) {
+                    for (int i = 0; i < data.getProcessedIds().length; i++) {
+                        processedIds.put(data.getProcessedIds()[i], data.getProcessedIdExpiries()[i]);
+                        processedExpiry.add(data.getProcessedIds()[i], data.getProcessedIdExpiries()[i]);
+                    }
+                }
 
+                // Older snapshots hold every processed email here
                 if (data.getProcessedEmails() != null) {
-                    processedEmails.putAll(data.getProcessedEmails());
+                    data.getProcessedEmails().values().forEach(this::applyProcessedEmail);
                 }
 
                 if (data.getUserFeedback() != null) {
-                    userFeedback.putAll(data.getUserFeedback());
+                    data.getUserFeedback().forEach((sender, feedbackList) ->
+                            feedbackList.forEach(fb -> applyFeedback(sender, fb)));
                 }
 
-                log.info("Loaded {} processed emails and feedback for {} senders from storage",
-                        processedEmails.size(), userFeedback.size());
+                log.info("Loaded {} processed emails ({} with metadata) and feedback for {} senders from storage",
+                        processedIds.size(), processedEmails.size(), userFeedback.size());
             } else {
                 log.info("No existing email tracking data found, starting fresh");
             }
         } catch (Exception e) {
             log.error("Error initializing email tracking service", e);
         }
+
+        // Replay events recorded after the snapshot, then keep appending to the journal
+        journal = new TrackingJournal(Paths.get(storageFile), objectMapper, journalDurability,
+                groupCommitRecords, groupCommitMillis);
+        try {
+            long replayed = journal.open(snapshotGeneration, this::applyJournalRecord);
+            log.info("Replayed {} journal records", replayed);
+        } catch (IOException e) {
+            log.error("Failed to open email tracking journal", e);
+        }
+
+        cleanupOldEntries();
+
+        if (importedJson) {
+            writeSnapshot();
+            log.info("Converted JSON email tracking snapshot to the binary format");
+        }
     }
 
-    private void saveToFile() {
+    @PreDestroy
+    public void shutdown() {
+        writeSnapshot();
         try {
-            StorageData data = new StorageData();
-            data.setProcessedEmails(new HashMap<>(processedEmails));
-            data.setUserFeedback(new HashMap<>(userFeedback));
+            journal.close();
+        } catch (IOException e) {
+            log.error("Failed to close email tracking journal", e);
+        }
+    }
 
-            objectMapper.writeValue(new File(storageFile), data);
+    /**
+     * Periodically fold the journal into a snapshot so replay on startup stays short
+     */
+    @Scheduled(fixedDelayString = "${notifysync.tracking.snapshot-interval-seconds:600}000")
+    public void snapshotIfNeeded() {
+        if (journal.getRecordsInGeneration() > 0) {
+            writeSnapshot();
+        }
+    }
+
+    private void writeSnapshot() {
+        StorageData data = new StorageData();
+
+        // Capture state and start a new journal generation atomically with respect to writers
+        synchronized (journal) {
+            data.setJournalGeneration(journal.rotate());
+            Map<String, ProcessedEmailInfo> emailsCopy = new HashMap<>();
+            processedEmails.forEach((key, email) -> {
+                ProcessedEmailInfo info = toProcessedEmailInfo(key, email);
+                emailsCopy.put(info.getEmailId(), info);
+            });
+            data.setProcessedEmails(emailsCopy);
+            long[] ids = new long[processedIds.size()];
+            long[] expiries = new long[ids.length];
+            int[] position = {0};
+            processedIds.forEach((key, expiresAt) -> {
+                ids[position[0]] = key;
+                expiries[position[0]++] = expiresAt;
+            });
+            data.setProcessedIds(ids);
+            data.setProcessedIdExpiries(expiries);
+            Map<String, List<UserFeedback>> feedbackCopy = new HashMap<>();
+            userFeedback.forEach((sender, feedbackList) ->
+                    feedbackCopy.put(senders.lookup(sender), feedbackList.stream().map(FeedbackEntry::toUserFeedback).toList()));
+            data.setUserFeedback(feedbackCopy);
+        }
+
+        try {
+            Path target = Paths.get(storageFile);
+            Path tempFile = target.resolveSibling(target.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                TrackingSnapshotCodec.write(data, out);
+            }
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            // Only now are the journal generations redundant
+            journal.deleteUpTo(data.getJournalGeneration());
+            log.debug("Wrote email tracking snapshot covering journal generation {}", data.getJournalGeneration());
         } catch (IOException e) {
             log.error("Failed to save email tracking data", e);
         }
     }
 
+    /**
+     * @return The record's journal sequence number, or 0 if it could not be queued
+     */
+    private long appendToJournal(JournalRecord record) {
+        try {
+            return journal.append(record);
+        } catch (IOException e) {
+            log.error("Failed to append {} record to email tracking journal", record.getType(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Wait for a record to reach the disk if the journal is in SYNC durability mode
+     */
+    private void awaitDurable(long sequence) {
+        try {
+            journal.awaitDurable(sequence);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Email tracking record was not written to the journal", e);
+        }
+    }
+
+    private void applyJournalRecord(JournalRecord record) {
+        switch (record.getType()) {
+            case PROCESSED -> applyProcessedEmail(record.getProcessedEmail());
+            case FEEDBACK -> applyFeedback(record.getSenderEmail(), record.getFeedback());
+        }
+    }
+
+    private void applyProcessedEmail(ProcessedEmailInfo info) {
+        long key = MessageIds.toKey(info.getEmailId());
+        long expiresAt = toEpochMillis(info.getProcessedTime()) + TimeUnit.HOURS.toMillis(processedRetentionHours);
+        processedIds.put(key, expiresAt);
+        processedExpiry.add(key, expiresAt);
+        // Feedback can come for any processed email, so every one keeps its sender and thread
+        // handles; only notified emails, which the user has seen, keep their subject
+        ProcessedEmail email = new ProcessedEmail(
+                Long.toHexString(key).equals(info.getEmailId()) ? null : info.getEmailId(),
+                threads.acquire(info.getThreadId()),
+                senders.acquire(info.getSenderEmail()),
+                storeSubjects && info.isWasNotified() ? info.getSubject() : null,
+                toEpochMillis(info.getProcessedTime()),
+                info.isWasImportant(),
+                info.isWasNotified());
+        release(processedEmails.put(key, email));
+        if (info.isWasNotified()) {
+            recordThreadNotification(info);
+        }
+    }
+
+    private void release(ProcessedEmail email) {
+        if (email != null) {
+            threads.release(email.thread());
+            senders.release(email.sender());
+        }
+    }
+
+    private void recordThreadNotification(ProcessedEmailInfo info) {
+        if (info.getThreadId() == null || info.getThreadId().isEmpty()) {
+            return;
+        }
+        long threadKey = MessageIds.toKey(info.getThreadId());
+        long notifiedAt = toEpochMillis(info.getProcessedTime());
+        // Snapshot and journal replay are not ordered by time, so keep the latest
+        if (notifiedAt > notifiedThreads.get(threadKey)) {
+            notifiedThreads.put(threadKey, notifiedAt);
+            threadExpiry.add(threadKey, notifiedAt + TimeUnit.HOURS.toMillis(threadRetentionHours));
+        }
+    }
+
+    private void applyFeedback(String senderEmail, UserFeedback feedback) {
+        int sender = senders.acquire(senderEmail);
+        List<FeedbackEntry> feedbackList = userFeedback.get(sender);
+        if (feedbackList == null) {
+            feedbackList = new ArrayList<>();
+            userFeedback.put(sender, feedbackList);
+        } else {
+            // The list already holds a reference
+            senders.release(sender);
+        }
+
+        long feedbackAt = toEpochMillis(feedback.getFeedbackTime());
+        feedbackList.add(new FeedbackEntry(feedback.getEmailId(), feedbackAt, feedback.isRelevant()));
+        senderReputation.record(senders.lookup(sender), feedback.isRelevant(), feedbackAt);
+    }
+
     @Override
     public boolean isEmailProcessed(String emailId) {
-        return processedEmails.containsKey(emailId);
+        long expiresAt = processedIds.get(MessageIds.toKey(emailId));
+        return expiresAt != TimestampIndex.MISSING && expiresAt > System.currentTimeMillis();
     }
 
     @Override
@@ -76,21 +316,18 @@ public class EmailTrackingServiceImpl implements EmailTrackingService {
         ProcessedEmailInfo info = new ProcessedEmailInfo();
         info.setEmailId(emailId);
         info.setThreadId(threadId);
-        info.setSubject(subject);
+        info.setSubject(storeSubjects ? subject : null);
         info.setSenderEmail(senderEmail);
         info.setProcessedTime(LocalDateTime.now());
         info.setWasImportant(wasImportant);
         info.setWasNotified(wasNotified);
 
-        processedEmails.put(emailId, info);
-
-        // Periodically clean up old entries
-        cleanupOldEntries();
-
-        // Save to file every 10 new emails
-        if (processedEmails.size() % 10 == 0) {
-            saveToFile();
+        long sequence;
+        synchronized (journal) {
+            applyProcessedEmail(info);
+            sequence = appendToJournal(JournalRecord.processed(info));
         }
+        awaitDurable(sequence);
     }
 
     @Override
@@ -99,81 +336,144 @@ public class EmailTrackingServiceImpl implements EmailTrackingService {
             return false;
         }
 
-        LocalDateTime cutoffTime = LocalDateTime.now().minusHours(lookbackHours);
-
-        // Look for any emails in this thread that were notified recently
-        return processedEmails.values().stream()
-                .anyMatch(info -> threadId.equals(info.getThreadId())
-                        && info.isWasNotified()
-                        && info.getProcessedTime().isAfter(cutoffTime));
+        long notifiedAt = notifiedThreads.get(MessageIds.toKey(threadId));
+        return notifiedAt != TimestampIndex.MISSING &&
+                notifiedAt > System.currentTimeMillis() - TimeUnit.HOURS.toMillis(lookbackHours);
     }
 
     @Override
     public void recordUserFeedback(String emailId, boolean isRelevant) {
-        ProcessedEmailInfo emailInfo = processedEmails.get(emailId);
-        if (emailInfo == null) {
-            log.warn("Received feedback for unknown email ID: {}", emailId);
-            return;
-        }
+        String threadId;
+        String subject;
+        String senderEmail;
+        long sequence;
+
+        // Resolve handles under the lock so expiry cannot recycle them in between
+        synchronized (journal) {
+            ProcessedEmail email = processedEmails.get(MessageIds.toKey(emailId));
+            if (email == null) {
+                log.warn("Received feedback for unknown email ID: {}", emailId);
+                return;
+            }
 
-        String senderEmail = emailInfo.getSenderEmail();
-        if (senderEmail == null || senderEmail.isEmpty()) {
-            return;
+            senderEmail = senders.lookup(email.sender());
+            if (senderEmail == null || senderEmail.isEmpty()) {
+                return;
+            }
+            threadId = threads.lookup(email.thread());
+            subject = email.subject();
+
+            // Create feedback entry
+            UserFeedback feedback = new UserFeedback();
+            feedback.setEmailId(emailId);
+            feedback.setFeedbackTime(LocalDateTime.now());
+            feedback.setRelevant(isRelevant);
+
+            // Add to sender's feedback list and the journal
+            applyFeedback(senderEmail, feedback);
+            sequence = appendToJournal(JournalRecord.feedback(senderEmail, feedback));
         }
+        awaitDurable(sequence);
 
-        // Create feedback entry
-        UserFeedback feedback = new UserFeedback();
-        feedback.setEmailId(emailId);
-        feedback.setFeedbackTime(LocalDateTime.now());
-        feedback.setRelevant(isRelevant);
-
-        // Add to sender's feedback list
-        userFeedback.computeIfAbsent(senderEmail, k -> new ArrayList<>()).add(feedback);
-
-        // Save to file after feedback
-        saveToFile();
+        // Let learning components (e.g. the importance model) update online
+        eventPublisher.publishEvent(new UserFeedbackEvent(emailId, threadId, subject, senderEmail, isRelevant));
     }
 
     @Override
-    public List<Object> getRecentFeedbackForSender(String senderEmail) {
-        if (!userFeedback.containsKey(senderEmail)) {
-            return Arrays.asList(0, 0); // No feedback yet
+    public SenderFeedbackStats getRecentFeedbackForSender(String senderEmail) {
+        // Served from the daily ring counters rather than scanning the feedback list
+        return senderReputation.lookup(senderEmail, System.currentTimeMillis());
+    }
+
+    /**
+     * Expire processed emails, thread state and feedback past their retention.
+     * Runs in the background so recording an email never pays for a scan.
+     */
+    @Scheduled(fixedDelayString = "${notifysync.tracking.cleanup-interval-seconds:60}000")
+    public void cleanupOldEntries() {
+        long now = System.currentTimeMillis();
+        long threadCutoff = now - TimeUnit.HOURS.toMillis(threadRetentionHours);
+        long feedbackCutoff = now - TimeUnit.DAYS.toMillis(feedbackRetentionDays);
+        int[] expired = {0};
+
+        synchronized (journal) {
+            // Queue entries made stale by a later refresh no longer match the table and are skipped
+            processedExpiry.drain(now, (key, deadline) -> {
+                long expiresAt = processedIds.get(key);
+                if (expiresAt != TimestampIndex.MISSING && expiresAt <= now) {
+                    processedIds.remove(key);
+                    release(processedEmails.remove(key));
+                    expired[0]++;
+                }
+            });
+            threadExpiry.drain(now, (key, deadline) -> {
+                long notifiedAt = notifiedThreads.get(key);
+                if (notifiedAt != TimestampIndex.MISSING && notifiedAt <= threadCutoff) {
+                    notifiedThreads.remove(key);
+                }
+            });
+
+            // Each sender's feedback is appended in time order, so expired entries form a prefix
+            Iterator<Map.Entry<Integer, List<FeedbackEntry>>> entries = userFeedback.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Integer, List<FeedbackEntry>> entry = entries.next();
+                List<FeedbackEntry> feedbackList = entry.getValue();
+                int stale = 0;
+                while (stale < feedbackList.size() && feedbackList.get(stale).feedbackAt() < feedbackCutoff) {
+                    stale++;
+                }
+                feedbackList.subList(0, stale).clear();
+                if (feedbackList.isEmpty()) {
+                    entries.remove();
+                    senders.release(entry.getKey());
+                }
+            }
         }
+        senderReputation.removeStale(now);
 
-        // Look at feedback from last 30 days
-        LocalDateTime cutoffTime = LocalDateTime.now().minusDays(30);
+        log.debug("Expired {} processed emails, remaining: {} emails ({} with metadata), {} threads, {} feedback senders, " +
+                        "{} interned senders, {} interned threads",
+                expired[0], processedIds.size(), processedEmails.size(), notifiedThreads.size(), userFeedback.size(),
+                senders.size(), threads.size());
+    }
 
-        List<UserFeedback> recentFeedback = userFeedback.get(senderEmail).stream()
-                .filter(fb -> fb.getFeedbackTime().isAfter(cutoffTime))
-                .toList();
+    private ProcessedEmailInfo toProcessedEmailInfo(long key, ProcessedEmail email) {
+        ProcessedEmailInfo info = new ProcessedEmailInfo();
+        info.setEmailId(email.emailId() != null ? email.emailId() : Long.toHexString(key));
+        info.setThreadId(threads.lookup(email.thread()));
+        info.setSubject(email.subject());
+        info.setSenderEmail(senders.lookup(email.sender()));
+        info.setProcessedTime(fromEpochMillis(email.processedAt()));
+        info.setWasImportant(email.important());
+        info.setWasNotified(email.notified());
+        return info;
+    }
 
-        int positiveCount = (int) recentFeedback.stream()
-                .filter(UserFeedback::isRelevant)
-                .count();
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
 
-        return Arrays.asList(positiveCount, recentFeedback.size());
+    private static LocalDateTime fromEpochMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
     }
 
     /**
-     * Clean up entries older than 30 days to prevent unlimited growth
+     * In-memory form of a processed email: strings that repeat are dictionary handles, and
+     * the ID is kept only if it cannot be recovered from the parsed key
      */
-    private void cleanupOldEntries() {
-        LocalDateTime cutoffTime = LocalDateTime.now().minusHours(24);
+    private record ProcessedEmail(String emailId, int thread, int sender, String subject,
+                                  long processedAt, boolean important, boolean notified) {
+    }
 
-        // Remove old processed emails
-        processedEmails.entrySet().removeIf(entry ->
-                entry.getValue().getProcessedTime().isBefore(cutoffTime));
+    private record FeedbackEntry(String emailId, long feedbackAt, boolean relevant) {
 
-        // Clean up old feedback
-        for (List<UserFeedback> feedbackList : userFeedback.values()) {
-            feedbackList.removeIf(fb -> fb.getFeedbackTime().isBefore(cutoffTime));
+        UserFeedback toUserFeedback() {
+            UserFeedback feedback = new UserFeedback();
+            feedback.setEmailId(emailId);
+            feedback.setFeedbackTime(fromEpochMillis(feedbackAt));
+            feedback.setRelevant(relevant);
+            return feedback;
         }
-
-        // Remove empty feedback lists
-        userFeedback.entrySet().removeIf(entry -> entry.getValue().isEmpty());
-
-        log.debug("Cleaned up old entries, remaining: {} emails, {} feedback senders",
-                processedEmails.size(), userFeedback.size());
     }
 
     /**
@@ -201,5 +501,10 @@ public class EmailTrackingServiceImpl implements EmailTrackingService {
     public static class StorageData {
         private Map<String, ProcessedEmailInfo> processedEmails;
         private Map<String, List<UserFeedback>> userFeedback;
+        // Parallel arrays of parsed processed IDs and their expiry times
+        private long[] processedIds;
+        private long[] processedIdExpiries;
+        // Newest journal generation whose records are included in this snapshot
+        private long journalGeneration;
     }
 }
\ No newline at end of file
@@ -0,0 +1,92 @@
+package com.notifysync.notifysync.service.tracking;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of (key, deadline) pairs in primitive arrays, so expired entries can
+ * be found without scanning the table that owns them.
+ * <p>
+ * The queue does not support removal or update; when an entry is refreshed, the owner
+ * simply adds a new deadline and ignores the stale one when it is drained.
+ */
+public class ExpiryQueue {
+
+    private long[] keys;
+    private long[] deadlines;
+    private int size;
+
+    public ExpiryQueue(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        keys = new long[capacity];
+        deadlines = new long[capacity];
+    }
+
+    /**
+     * Schedule a key to be handed back once its deadline has passed
+     */
+    public synchronized void add(long key, long deadline) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size << 1);
+            deadlines = Arrays.copyOf(deadlines, size << 1);
+        }
+
+        int child = size++;
+        while (child > 0) {
+            int parent = (child - 1) >>> 1;
+            if (deadlines[parent] <= deadline) {
+                break;
+            }
+            keys[child] = keys[parent];
+            deadlines[child] = deadlines[parent];
+            child = parent;
+        }
+        keys[child] = key;
+        deadlines[child] = deadline;
+    }
+
+    /**
+     * Remove every entry whose deadline is at or before {@code now}, earliest first
+     *
+     * @param now Current time in epoch millis
+     * @param expired Receives each removed key and its deadline
+     * @return Number of entries removed
+     */
+    public synchronized int drain(long now, TimestampIndex.EntryVisitor expired) {
+        int drained = 0;
+        while (size > 0 && deadlines[0] <= now) {
+            long key = keys[0];
+            long deadline = deadlines[0];
+            removeHead();
+            expired.accept(key, deadline);
+            drained++;
+        }
+        return drained;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void removeHead() {
+        size--;
+        long key = keys[size];
+        long deadline = deadlines[size];
+
+        int parent = 0;
+        int half = size >>> 1;
+        while (parent < half) {
+            int child = 2 * parent + 1;
+            if (child + 1 < size && deadlines[child + 1] < deadlines[child]) {
+                child++;
+            }
+            if (deadline <= deadlines[child]) {
+                break;
+            }
+            keys[parent] = keys[child];
+            deadlines[parent] = deadlines[child];
+            parent = child;
+        }
+        keys[parent] = key;
+        deadlines[parent] = deadline;
+    }
+}
@@ -0,0 +1,412 @@
+package com.notifysync.notifysync.service.tracking;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracking store on an embedded H2 database, enabled with
+ * {@code notifysync.tracking.store=jdbc}.
+ * <p>
+ * Processed emails are buffered and written in one batch per poll cycle (see
+ * {@link #flush()}), or sooner once {@code batch-size} records are pending. Pending
+ * records are answered from memory, so the buffer is invisible to callers. The tables
+ * are indexed for the lookups below and can be queried directly for history.
+ */
+@Service
+@ConditionalOnProperty(name = "notifysync.tracking.store", havingValue = "jdbc")
+@RequiredArgsConstructor
+@Slf4j
+public class JdbcEmailTrackingService implements EmailTrackingService {
+
+    private static final int MAX_SUBJECT_LENGTH = 1000;
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS processed_email (" +
+                    "email_id VARCHAR(128) PRIMARY KEY, " +
+                    "thread_id VARCHAR(128), " +
+                    "subject VARCHAR(" + MAX_SUBJECT_LENGTH + "), " +
+                    "sender_email VARCHAR(320), " +
+                    "processed_at BIGINT NOT NULL, " +
+                    "was_important BOOLEAN NOT NULL, " +
+                    "was_notified BOOLEAN NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS processed_email_processed_at ON processed_email (processed_at)",
+            "CREATE TABLE IF NOT EXISTS thread_notification (" +
+                    "thread_id VARCHAR(128) PRIMARY KEY, " +
+                    "notified_at BIGINT NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS thread_notification_notified_at ON thread_notification (notified_at)",
+            "CREATE TABLE IF NOT EXISTS user_feedback (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "email_id VARCHAR(128) NOT NULL, " +
+                    "sender_email VARCHAR(320) NOT NULL, " +
+                    "feedback_at BIGINT NOT NULL, " +
+                    "relevant BOOLEAN NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS user_feedback_sender ON user_feedback (sender_email, feedback_at)",
+            "CREATE INDEX IF NOT EXISTS user_feedback_feedback_at ON user_feedback (feedback_at)"
+    };
+
+    private static final String MERGE_PROCESSED =
+            "MERGE INTO processed_email (email_id, thread_id, subject, sender_email, processed_at, " +
+                    "was_important, was_notified) KEY (email_id) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String MERGE_THREAD =
+            "MERGE INTO thread_notification (thread_id, notified_at) KEY (thread_id) VALUES (?, ?)";
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${notifysync.tracking.jdbc.url:jdbc:h2:file:./tracking-db/notifysync}")
+    private String url;
+
+    @Value("${notifysync.tracking.jdbc.username:sa}")
+    private String username;
+
+    @Value("${notifysync.tracking.jdbc.password:}")
+    private String password;
+
+    @Value("${notifysync.tracking.jdbc.batch-size:100}")
+    private int batchSize;
+
+    @Value("${notifysync.tracking.retention.processed-hours:24}")
+    private long processedRetentionHours;
+
+    @Value("${notifysync.tracking.retention.thread-hours:24}")
+    private long threadRetentionHours;
+
+    // Feedback counts toward a sender's stats for exactly as long as it is kept
+    @Value("${notifysync.tracking.retention.feedback-days:30}")
+    private int feedbackRetentionDays;
+
+    private Connection connection;
+
+    // Records not yet written, in arrival order
+    private final Map<String, EmailTrackingServiceImpl.ProcessedEmailInfo> pendingEmails = new LinkedHashMap<>();
+    private final Map<String, Long> pendingThreads = new LinkedHashMap<>();
+
+    @PostConstruct
+    public void init() throws SQLException {
+        connection = DriverManager.getConnection(url, username, password);
+        try (Statement statement = connection.createStatement()) {
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+        }
+        connection.setAutoCommit(false);
+        log.info("Opened email tracking database at {}", url);
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        flush();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.error("Failed to close email tracking database", e);
+        }
+    }
+
+    @Override
+    public synchronized boolean isEmailProcessed(String emailId) {
+        if (pendingEmails.containsKey(emailId)) {
+            return true;
+        }
+
+        long cutoff = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(processedRetentionHours);
+        try (PreparedStatement query = connection.prepareStatement(
+                "SELECT 1 FROM processed_email WHERE email_id = ? AND processed_at > ?")) {
+            query.setString(1, emailId);
+            query.setLong(2, cutoff);
+            try (ResultSet result = query.executeQuery()) {
+                return result.next();
+            }
+        } catch (SQLException e) {
+            log.error("Failed to check if email {} was processed", emailId, e);
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void recordProcessedEmail(String emailId, String threadId, String subject,
+                                                  String senderEmail, boolean wasImportant, boolean wasNotified) {
+        EmailTrackingServiceImpl.ProcessedEmailInfo info = new EmailTrackingServiceImpl.ProcessedEmailInfo();
+        info.setEmailId(emailId);
+        info.setThreadId(threadId);
+        info.setSubject(subject);
+        info.setSenderEmail(senderEmail);
+        info.setProcessedTime(LocalDateTime.now());
+        info.setWasImportant(wasImportant);
+        info.setWasNotified(wasNotified);
+
+        pendingEmails.put(emailId, info);
+        if (wasNotified && threadId != null && !threadId.isEmpty()) {
+            pendingThreads.put(threadId, toEpochMillis(info.getProcessedTime()));
+        }
+
+        if (pendingEmails.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized boolean wasThreadRecentlyProcessed(String threadId, int lookbackHours) {
+        if (threadId == null || threadId.isEmpty()) {
+            return false;
+        }
+
+        long cutoff = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(lookbackHours);
+        Long pendingNotifiedAt = pendingThreads.get(threadId);
+        if (pendingNotifiedAt != null && pendingNotifiedAt > cutoff) {
+            return true;
+        }
+
+        try (PreparedStatement query = connection.prepareStatement(
+                "SELECT 1 FROM thread_notification WHERE thread_id = ? AND notified_at > ?")) {
+            query.setString(1, threadId);
+            query.setLong(2, cutoff);
+            try (ResultSet result = query.executeQuery()) {
+                return result.next();
+            }
+        } catch (SQLException e) {
+            log.error("Failed to check thread {}", threadId, e);
+            return false;
+        }
+    }
+
+    @Override
+    public void recordUserFeedback(String emailId, boolean isRelevant) {
+        String threadId;
+        String subject;
+        String senderEmail;
+
+        synchronized (this) {
+            EmailTrackingServiceImpl.ProcessedEmailInfo pending = pendingEmails.get(emailId);
+            if (pending != null) {
+                threadId = pending.getThreadId();
+                subject = pending.getSubject();
+                senderEmail = pending.getSenderEmail();
+            } else {
+                try (PreparedStatement query = connection.prepareStatement(
+                        "SELECT thread_id, subject, sender_email FROM processed_email WHERE email_id = ?")) {
+                    query.setString(1, emailId);
+                    try (ResultSet result = query.executeQuery()) {
+                        if (!result.next()) {
+                            log.warn("Received feedback for unknown email ID: {}", emailId);
+                            return;
+                        }
+                        threadId = result.getString(1);
+                        subject = result.getString(2);
+                        senderEmail = result.getString(3);
+                    }
+                } catch (SQLException e) {
+                    log.error("Failed to look up email {} for feedback", emailId, e);
+                    return;
+                }
+            }
+
+            if (senderEmail == null || senderEmail.isEmpty()) {
+                return;
+            }
+
+            // Feedback is rare, so it is committed right away
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO user_feedback (email_id, sender_email, feedback_at, relevant) VALUES (?, ?, ?, ?)")) {
+                insert.setString(1, emailId);
+                insert.setString(2, senderEmail);
+                insert.setLong(3, System.currentTimeMillis());
+                insert.setBoolean(4, isRelevant);
+                insert.executeUpdate();
+                connection.commit();
+            } catch (SQLException e) {
+                log.error("Failed to store feedback for email {}", emailId, e);
+                rollback();
+                return;
+            }
+        }
+
+        // Let learning components (e.g. the importance model) update online
+        eventPublisher.publishEvent(new UserFeedbackEvent(emailId, threadId, subject, senderEmail, isRelevant));
+    }
+
+    @Override
+    public synchronized SenderFeedbackStats getRecentFeedbackForSender(String senderEmail) {
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(feedbackRetentionDays);
+        try (PreparedStatement query = connection.prepareStatement(
+                "SELECT COUNT(*), COALESCE(SUM(CASE WHEN relevant THEN 1 ELSE 0 END), 0) FROM user_feedback " +
+                        "WHERE sender_email = ? AND feedback_at >= ?")) {
+            query.setString(1, senderEmail);
+            query.setLong(2, cutoff);
+            try (ResultSet result = query.executeQuery()) {
+                result.next();
+                int total = result.getInt(1);
+                return total == 0 ? SenderFeedbackStats.NONE : new SenderFeedbackStats(result.getInt(2), total);
+            }
+        } catch (SQLException e) {
+            log.error("Failed to read feedback for sender {}", senderEmail, e);
+            return SenderFeedbackStats.NONE;
+        }
+    }
+
+    /**
+     * Write pending records in one batch and commit. If the batch is rejected the records
+     * are written one at a time, so a single bad row can't hold back the rest.
+     */
+    @Override
+    public synchronized void flush() {
+        if (pendingEmails.isEmpty() && pendingThreads.isEmpty()) {
+            return;
+        }
+
+        try (PreparedStatement mergeEmail = connection.prepareStatement(MERGE_PROCESSED);
+             PreparedStatement mergeThread = connection.prepareStatement(MERGE_THREAD)) {
+            for (EmailTrackingServiceImpl.ProcessedEmailInfo info : pendingEmails.values()) {
+                bindEmail(mergeEmail, info);
+                mergeEmail.addBatch();
+            }
+            for (Map.Entry<String, Long> thread : pendingThreads.entrySet()) {
+                bindThread(mergeThread, thread);
+                mergeThread.addBatch();
+            }
+            mergeEmail.executeBatch();
+            mergeThread.executeBatch();
+            connection.commit();
+
+            log.debug("Wrote {} processed emails and {} threads to the tracking database",
+                    pendingEmails.size(), pendingThreads.size());
+            pendingEmails.clear();
+            pendingThreads.clear();
+        } catch (SQLException e) {
+            log.warn("Failed to write {} processed emails to the tracking database as a batch, writing them one at a time",
+                    pendingEmails.size(), e);
+            rollback();
+            flushOneByOne();
+        }
+    }
+
+    /**
+     * Write and commit each pending record on its own. Records the database rejects for
+     * their content are dropped; the rest stay pending and are retried on the next flush.
+     */
+    private void flushOneByOne() {
+        try (PreparedStatement mergeEmail = connection.prepareStatement(MERGE_PROCESSED);
+             PreparedStatement mergeThread = connection.prepareStatement(MERGE_THREAD)) {
+            Iterator<EmailTrackingServiceImpl.ProcessedEmailInfo> emails = pendingEmails.values().iterator();
+            while (emails.hasNext()) {
+                EmailTrackingServiceImpl.ProcessedEmailInfo info = emails.next();
+                if (writeOne(mergeEmail, statement -> bindEmail(statement, info), "processed email " + info.getEmailId())) {
+                    emails.remove();
+                }
+            }
+            Iterator<Map.Entry<String, Long>> threads = pendingThreads.entrySet().iterator();
+            while (threads.hasNext()) {
+                Map.Entry<String, Long> thread = threads.next();
+                if (writeOne(mergeThread, statement -> bindThread(statement, thread), "thread " + thread.getKey())) {
+                    threads.remove();
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Failed to write {} processed emails to the tracking database", pendingEmails.size(), e);
+        }
+    }
+
+    /**
+     * @return true if the row was written or dropped, false if it should be retried
+     */
+    private boolean writeOne(PreparedStatement statement, SqlBinder binder, String description) {
+        try {
+            binder.bind(statement);
+            statement.executeUpdate();
+            connection.commit();
+            return true;
+        } catch (SQLDataException | SQLIntegrityConstraintViolationException e) {
+            log.error("Dropping {}, which the tracking database rejected", description, e);
+            rollback();
+            return true;
+        } catch (SQLException e) {
+            log.error("Failed to write {} to the tracking database", description, e);
+            rollback();
+            return false;
+        }
+    }
+
+    private static void bindEmail(PreparedStatement statement, EmailTrackingServiceImpl.ProcessedEmailInfo info)
+            throws SQLException {
+        String subject = info.getSubject();
+        statement.setString(1, info.getEmailId());
+        statement.setString(2, info.getThreadId());
+        statement.setString(3, subject != null && subject.length() > MAX_SUBJECT_LENGTH
+                ? subject.substring(0, MAX_SUBJECT_LENGTH) : subject);
+        statement.setString(4, info.getSenderEmail());
+        statement.setLong(5, toEpochMillis(info.getProcessedTime()));
+        statement.setBoolean(6, info.isWasImportant());
+        statement.setBoolean(7, info.isWasNotified());
+    }
+
+    private static void bindThread(PreparedStatement statement, Map.Entry<String, Long> thread) throws SQLException {
+        statement.setString(1, thread.getKey());
+        statement.setLong(2, thread.getValue());
+    }
+
+    @FunctionalInterface
+    private interface SqlBinder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    /**
+     * Delete rows past their retention
+     */
+    @Scheduled(fixedDelayString = "${notifysync.tracking.cleanup-interval-seconds:60}000")
+    public synchronized void cleanupOldEntries() {
+        long now = System.currentTimeMillis();
+        try {
+            int emails = deleteOlderThan("DELETE FROM processed_email WHERE processed_at < ?",
+                    now - TimeUnit.HOURS.toMillis(processedRetentionHours));
+            int threads = deleteOlderThan("DELETE FROM thread_notification WHERE notified_at < ?",
+                    now - TimeUnit.HOURS.toMillis(threadRetentionHours));
+            int feedback = deleteOlderThan("DELETE FROM user_feedback WHERE feedback_at < ?",
+                    now - TimeUnit.DAYS.toMillis(feedbackRetentionDays));
+            connection.commit();
+            log.debug("Cleaned up {} processed emails, {} threads and {} feedback entries", emails, threads, feedback);
+        } catch (SQLException e) {
+            log.error("Failed to clean up the tracking database", e);
+            rollback();
+        }
+    }
+
+    private int deleteOlderThan(String sql, long cutoff) throws SQLException {
+        try (PreparedStatement delete = connection.prepareStatement(sql)) {
+            delete.setLong(1, cutoff);
+            return delete.executeUpdate();
+        }
+    }
+
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            log.error("Failed to roll back tracking database transaction", e);
+        }
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,37 @@
+package com.notifysync.notifysync.service.tracking;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/**
+ * One event in the tracking journal
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class JournalRecord {
+
+    public enum Type {
+        PROCESSED,
+        FEEDBACK
+    }
+
+    private Type type;
+    private EmailTrackingServiceImpl.ProcessedEmailInfo processedEmail;
+    private String senderEmail;
+    private EmailTrackingServiceImpl.UserFeedback feedback;
+
+    public static JournalRecord processed(EmailTrackingServiceImpl.ProcessedEmailInfo info) {
+        JournalRecord record = new JournalRecord();
+        record.setType(Type.PROCESSED);
+        record.setProcessedEmail(info);
+        return record;
+    }
+
+    public static JournalRecord feedback(String senderEmail, EmailTrackingServiceImpl.UserFeedback feedback) {
+        JournalRecord record = new JournalRecord();
+        record.setType(Type.FEEDBACK);
+        record.setSenderEmail(senderEmail);
+        record.setFeedback(feedback);
+        return record;
+    }
+}
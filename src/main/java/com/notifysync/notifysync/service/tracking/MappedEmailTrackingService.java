@@ -0,0 +1,361 @@
+package com.notifysync.notifysync.service.tracking;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracking store backed by memory-mapped files, enabled with
+ * {@code notifysync.tracking.store=mapped}.
+ * <p>
+ * Processed IDs, the latest notification time per thread, and the location of each
+ * processed email's metadata are kept in fixed-record {@link MappedTimestampIndex}
+ * files. The metadata itself and feedback events go to append-only segments, which
+ * cleanup compacts down to the metadata still referenced and the feedback still inside
+ * the window. Nothing is parsed at startup except that feedback, so the store opens
+ * instantly and neither startup time nor heap usage grows with retained history.
+ */
+@Service
+@ConditionalOnProperty(name = "notifysync.tracking.store", havingValue = "mapped")
+@RequiredArgsConstructor
+@Slf4j
+public class MappedEmailTrackingService implements EmailTrackingService {
+
+    // Leftover records tolerated before the email segment is compacted, beyond one per live record
+    private static final long MIN_DEAD_RECORDS_TO_COMPACT = 1000;
+    private static final int FEEDBACK_TIMESTAMP_BYTES = Long.BYTES;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${notifysync.tracking.mapped.directory:tracking-data}")
+    private String directory;
+
+    @Value("${notifysync.tracking.expected-processed-emails:10000}")
+    private int expectedProcessedEmails;
+
+    // Feedback counts toward a sender's stats for exactly as long as it is kept
+    @Value("${notifysync.tracking.retention.feedback-days:30}")
+    private int feedbackRetentionDays;
+
+    @Value("${notifysync.tracking.retention.processed-hours:24}")
+    private long processedRetentionHours;
+
+    @Value("${notifysync.tracking.retention.thread-hours:24}")
+    private long threadRetentionHours;
+
+    private MappedTimestampIndex processedIds;
+    private MappedTimestampIndex notifiedThreads;
+    private MappedTimestampIndex metadataOffsets;
+    private AppendOnlySegment emailSegment;
+    private AppendOnlySegment feedbackSegment;
+    private SenderReputationIndex senderReputation;
+    private long feedbackCompactedAt;
+
+    @PostConstruct
+    public void init() throws IOException {
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+
+        processedIds = new MappedTimestampIndex(dir.resolve("processed.idx"), expectedProcessedEmails);
+        notifiedThreads = new MappedTimestampIndex(dir.resolve("threads.idx"), expectedProcessedEmails / 4);
+        metadataOffsets = new MappedTimestampIndex(dir.resolve("metadata.idx"), expectedProcessedEmails);
+        emailSegment = new AppendOnlySegment(dir.resolve("emails.dat"));
+        feedbackSegment = new AppendOnlySegment(dir.resolve("feedback.dat"));
+
+        senderReputation = new SenderReputationIndex(feedbackRetentionDays);
+        long windowStart = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(feedbackRetentionDays);
+        feedbackSegment.forEach((offset, record) -> {
+            // Feedback that has aged out since the last compaction is skipped undecoded
+            if (feedbackTimestamp(record) < windowStart) {
+                return;
+            }
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+                String senderEmail = readString(in);
+                boolean relevant = in.readBoolean();
+                senderReputation.record(senderEmail, relevant, in.readLong());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        log.info("Opened mapped email tracking store with {} processed emails, {} notified threads",
+                processedIds.size(), notifiedThreads.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        try {
+            emailSegment.close();
+            feedbackSegment.close();
+        } catch (IOException e) {
+            log.error("Failed to close mapped email tracking store", e);
+        }
+    }
+
+    @Override
+    public boolean isEmailProcessed(String emailId) {
+        long expiresAt = processedIds.get(MessageIds.toKey(emailId));
+        return expiresAt != TimestampIndex.MISSING && expiresAt > System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized void recordProcessedEmail(String emailId, String threadId, String subject,
+                                                  String senderEmail, boolean wasImportant, boolean wasNotified) {
+        long now = System.currentTimeMillis();
+        long key = MessageIds.toKey(emailId);
+        processedIds.put(key, now + TimeUnit.HOURS.toMillis(processedRetentionHours));
+
+        // Feedback can come for any processed email; only notified ones, which the user
+        // has seen, keep their subject
+        try {
+            long offset = emailSegment.append(encodeEmail(emailId, threadId, wasNotified ? subject : null,
+                    senderEmail, now, wasImportant, wasNotified));
+            metadataOffsets.put(key, offset);
+        } catch (IOException e) {
+            log.error("Failed to store metadata for email {}", emailId, e);
+        }
+
+        if (wasNotified && threadId != null && !threadId.isEmpty()) {
+            notifiedThreads.put(MessageIds.toKey(threadId), now);
+        }
+    }
+
+    @Override
+    public boolean wasThreadRecentlyProcessed(String threadId, int lookbackHours) {
+        if (threadId == null || threadId.isEmpty()) {
+            return false;
+        }
+
+        long notifiedAt = notifiedThreads.get(MessageIds.toKey(threadId));
+        return notifiedAt != TimestampIndex.MISSING &&
+                notifiedAt > System.currentTimeMillis() - TimeUnit.HOURS.toMillis(lookbackHours);
+    }
+
+    @Override
+    public void recordUserFeedback(String emailId, boolean isRelevant) {
+        EmailTrackingServiceImpl.ProcessedEmailInfo emailInfo;
+        // Compaction moves metadata, so the offset must be read under the same lock
+        synchronized (this) {
+            long offset = metadataOffsets.get(MessageIds.toKey(emailId));
+            if (offset == TimestampIndex.MISSING) {
+                log.warn("Received feedback for unknown email ID: {}", emailId);
+                return;
+            }
+
+            try {
+                emailInfo = decodeEmail(emailSegment.read(offset));
+            } catch (IOException e) {
+                log.error("Failed to read metadata for email {}", emailId, e);
+                return;
+            }
+        }
+        if (!emailId.equals(emailInfo.getEmailId())) {
+            // Only after a crash between compacting the segment and saving the moved offsets
+            log.warn("Metadata for email {} was lost, ignoring its feedback", emailId);
+            return;
+        }
+
+        String senderEmail = emailInfo.getSenderEmail();
+        if (senderEmail == null || senderEmail.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        try {
+            feedbackSegment.append(encodeFeedback(senderEmail, isRelevant, now));
+        } catch (IOException e) {
+            log.error("Failed to store feedback for email {}", emailId, e);
+        }
+        senderReputation.record(senderEmail, isRelevant, now);
+
+        // Let learning components (e.g. the importance model) update online
+        eventPublisher.publishEvent(new UserFeedbackEvent(emailId, emailInfo.getThreadId(),
+                emailInfo.getSubject(), senderEmail, isRelevant));
+    }
+
+    @Override
+    public SenderFeedbackStats getRecentFeedbackForSender(String senderEmail) {
+        return senderReputation.lookup(senderEmail, System.currentTimeMillis());
+    }
+
+    /**
+     * Expire old entries and force pending writes to disk
+     */
+    @Scheduled(fixedDelayString = "${notifysync.tracking.mapped.cleanup-interval-seconds:300}000")
+    public void cleanupOldEntries() {
+        long now = System.currentTimeMillis();
+        int expired = processedIds.removeOlderThan(now);
+        notifiedThreads.removeOlderThan(now - TimeUnit.HOURS.toMillis(threadRetentionHours));
+
+        // Drop metadata pointers for emails that are no longer tracked
+        if (expired > 0) {
+            long[] stale = new long[metadataOffsets.size()];
+            int[] count = {0};
+            metadataOffsets.forEach((key, offset) -> {
+                if (processedIds.get(key) == TimestampIndex.MISSING) {
+                    stale[count[0]++] = key;
+                }
+            });
+            for (int i = 0; i < count[0]; i++) {
+                metadataOffsets.remove(stale[i]);
+            }
+        }
+        senderReputation.removeStale(now);
+
+        try {
+            compactEmailSegment();
+            if (now - feedbackCompactedAt >= TimeUnit.DAYS.toMillis(1)) {
+                compactFeedbackSegment(now);
+                feedbackCompactedAt = now;
+            }
+        } catch (IOException e) {
+            log.error("Failed to compact mapped email tracking store", e);
+        }
+
+        flush();
+        log.debug("Cleaned up {} expired emails, remaining: {} emails, {} notified threads",
+                expired, processedIds.size(), notifiedThreads.size());
+    }
+
+    /**
+     * Rewrite the email segment without metadata that is no longer referenced, once
+     * unreferenced records outnumber the live ones
+     */
+    private synchronized void compactEmailSegment() throws IOException {
+        long live = metadataOffsets.size();
+        if (emailSegment.getRecordCount() - live <= live + MIN_DEAD_RECORDS_TO_COMPACT) {
+            return;
+        }
+
+        Map<Long, Long> keysByOffset = new HashMap<>();
+        metadataOffsets.forEach((key, offset) -> keysByOffset.put(offset, key));
+        long dropped = emailSegment.compact((offset, record) -> keysByOffset.containsKey(offset),
+                (oldOffset, newOffset) -> metadataOffsets.put(keysByOffset.get(oldOffset), newOffset));
+        metadataOffsets.flush();
+        log.info("Compacted email metadata segment, dropped {} records, kept {}", dropped, live);
+    }
+
+    /**
+     * Rewrite the feedback segment with only the feedback still inside the window
+     */
+    private void compactFeedbackSegment(long now) throws IOException {
+        long windowStart = now - TimeUnit.DAYS.toMillis(feedbackRetentionDays);
+        long dropped = feedbackSegment.compact((offset, record) -> feedbackTimestamp(record) >= windowStart,
+                (oldOffset, newOffset) -> {
+                });
+        if (dropped > 0) {
+            log.info("Compacted feedback segment, dropped {} expired records", dropped);
+        }
+    }
+
+    /**
+     * Force pending writes to disk at the end of each poll cycle
+     */
+    @Override
+    public void flush() {
+        processedIds.flush();
+        notifiedThreads.flush();
+        metadataOffsets.flush();
+        try {
+            emailSegment.flush();
+            feedbackSegment.flush();
+        } catch (IOException e) {
+            log.error("Failed to flush mapped email tracking store", e);
+        }
+    }
+
+    private static byte[] encodeEmail(String emailId, String threadId, String subject, String senderEmail,
+                                      long processedAt, boolean wasImportant, boolean wasNotified) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeString(out, emailId);
+            writeString(out, threadId);
+            writeString(out, subject);
+            writeString(out, senderEmail);
+            out.writeLong(processedAt);
+            out.writeBoolean(wasImportant);
+            out.writeBoolean(wasNotified);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static EmailTrackingServiceImpl.ProcessedEmailInfo decodeEmail(byte[] record) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            EmailTrackingServiceImpl.ProcessedEmailInfo info = new EmailTrackingServiceImpl.ProcessedEmailInfo();
+            info.setEmailId(readString(in));
+            info.setThreadId(readString(in));
+            info.setSubject(readString(in));
+            info.setSenderEmail(readString(in));
+            info.setProcessedTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(in.readLong()), ZoneId.systemDefault()));
+            info.setWasImportant(in.readBoolean());
+            // Records written before every processed email was kept are all notified ones
+            info.setWasNotified(in.available() == 0 || in.readBoolean());
+            return info;
+        }
+    }
+
+    private static byte[] encodeFeedback(String senderEmail, boolean relevant, long timestamp) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeString(out, senderEmail);
+            out.writeBoolean(relevant);
+            out.writeLong(timestamp);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The timestamp is the last field of a feedback record, so it can be read without decoding the rest
+     */
+    private static long feedbackTimestamp(byte[] record) {
+        return ByteBuffer.wrap(record, record.length - FEEDBACK_TIMESTAMP_BYTES, FEEDBACK_TIMESTAMP_BYTES).getLong();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
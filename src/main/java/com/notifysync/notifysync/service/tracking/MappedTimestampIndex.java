@@ -0,0 +1,183 @@
+package com.notifysync.notifysync.service.tracking;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link TimestampIndex} whose slots live in a memory-mapped file of fixed 16-byte
+ * records, so opening it costs nothing beyond mapping the file and lookups are
+ * served from the page cache without loading anything into the heap.
+ * <p>
+ * Writes reach the page cache immediately and survive a process crash; call
+ * {@link #flush()} to force them to disk. Growing the table rewrites it into a new
+ * file that atomically replaces the old one.
+ */
+@Slf4j
+public class MappedTimestampIndex extends ProbingTimestampIndex implements Closeable {
+
+    private static final int MAGIC = 0x4E53494E; // "NSIN"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int RECORD_BYTES = 16;
+    private static final int MAX_CAPACITY = Integer.highestOneBit((Integer.MAX_VALUE - HEADER_BYTES) / RECORD_BYTES);
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_SIZE = 12;
+    private static final int OFFSET_ZERO_KEY_PRESENT = 16;
+    private static final int OFFSET_ZERO_KEY_TIMESTAMP = 24;
+
+    private final Path file;
+    private MappedByteBuffer buffer;
+    private int capacity;
+
+    /**
+     * Open the index file, creating it if it does not exist
+     *
+     * @param file The index file
+     * @param expectedSize Number of entries to size a new file for
+     */
+    public MappedTimestampIndex(Path file, int expectedSize) throws IOException {
+        this.file = file;
+        if (Files.exists(file) && Files.size(file) >= HEADER_BYTES) {
+            buffer = map(file, Files.size(file));
+            if (buffer.getInt(OFFSET_MAGIC) != MAGIC || buffer.getInt(OFFSET_VERSION) != VERSION) {
+                throw new IOException("Not a tracking index file: " + file);
+            }
+            capacity = buffer.getInt(OFFSET_CAPACITY);
+            if (Files.size(file) != HEADER_BYTES + (long) capacity * RECORD_BYTES) {
+                throw new IOException("Tracking index file has an unexpected length: " + file);
+            }
+        } else {
+            buffer = create(file, capacityFor(expectedSize));
+            capacity = buffer.getInt(OFFSET_CAPACITY);
+        }
+    }
+
+    /**
+     * Force pending writes to disk
+     */
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        buffer.force();
+    }
+
+    @Override
+    protected int capacity() {
+        return capacity;
+    }
+
+    @Override
+    protected long keyAt(int slot) {
+        return buffer.getLong(HEADER_BYTES + slot * RECORD_BYTES);
+    }
+
+    @Override
+    protected long timestampAt(int slot) {
+        return buffer.getLong(HEADER_BYTES + slot * RECORD_BYTES + 8);
+    }
+
+    @Override
+    protected void writeSlot(int slot, long key, long timestamp) {
+        int offset = HEADER_BYTES + slot * RECORD_BYTES;
+        buffer.putLong(offset + 8, timestamp);
+        buffer.putLong(offset, key);
+    }
+
+    @Override
+    protected void writeTimestamp(int slot, long timestamp) {
+        buffer.putLong(HEADER_BYTES + slot * RECORD_BYTES + 8, timestamp);
+    }
+
+    @Override
+    protected int storedSize() {
+        return buffer.getInt(OFFSET_SIZE);
+    }
+
+    @Override
+    protected void storeSize(int size) {
+        buffer.putInt(OFFSET_SIZE, size);
+    }
+
+    @Override
+    protected boolean hasZeroKey() {
+        return buffer.getInt(OFFSET_ZERO_KEY_PRESENT) != 0;
+    }
+
+    @Override
+    protected long zeroKeyTimestamp() {
+        return buffer.getLong(OFFSET_ZERO_KEY_TIMESTAMP);
+    }
+
+    @Override
+    protected void storeZeroKey(boolean present, long timestamp) {
+        buffer.putLong(OFFSET_ZERO_KEY_TIMESTAMP, timestamp);
+        buffer.putInt(OFFSET_ZERO_KEY_PRESENT, present ? 1 : 0);
+    }
+
+    @Override
+    protected void grow(int newCapacity) {
+        if (newCapacity > MAX_CAPACITY) {
+            // Keep working at a higher load rather than failing writes
+            log.warn("Tracking index {} is at its maximum capacity of {} slots", file, capacity);
+            return;
+        }
+
+        Path grownFile = file.resolveSibling(file.getFileName() + ".grow");
+        MappedByteBuffer oldBuffer = buffer;
+        int oldCapacity = capacity;
+
+        try {
+            buffer = create(grownFile, newCapacity);
+            capacity = newCapacity;
+            for (int slot = 0; slot < oldCapacity; slot++) {
+                long key = oldBuffer.getLong(HEADER_BYTES + slot * RECORD_BYTES);
+                if (key != EMPTY) {
+                    insertFresh(key, oldBuffer.getLong(HEADER_BYTES + slot * RECORD_BYTES + 8));
+                }
+            }
+            buffer.putInt(OFFSET_SIZE, oldBuffer.getInt(OFFSET_SIZE));
+            buffer.putInt(OFFSET_ZERO_KEY_PRESENT, oldBuffer.getInt(OFFSET_ZERO_KEY_PRESENT));
+            buffer.putLong(OFFSET_ZERO_KEY_TIMESTAMP, oldBuffer.getLong(OFFSET_ZERO_KEY_TIMESTAMP));
+            buffer.force();
+
+            Files.move(grownFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The old file is untouched; carry on with it at a higher load
+            log.error("Failed to grow tracking index {}", file, e);
+            buffer = oldBuffer;
+            capacity = oldCapacity;
+        }
+    }
+
+    private static MappedByteBuffer create(Path path, int capacity) throws IOException {
+        Files.deleteIfExists(path);
+        MappedByteBuffer created = map(path, HEADER_BYTES + (long) capacity * RECORD_BYTES);
+        created.putInt(OFFSET_MAGIC, MAGIC);
+        created.putInt(OFFSET_VERSION, VERSION);
+        created.putInt(OFFSET_CAPACITY, capacity);
+        created.putInt(OFFSET_SIZE, 0);
+        return created;
+    }
+
+    private static MappedByteBuffer map(Path path, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.notifysync.notifysync.service.tracking;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts Gmail message and thread IDs to 64-bit keys
+ */
+public final class MessageIds {
+
+    private MessageIds() {
+    }
+
+    /**
+     * Gmail IDs are up to 16 hex digits and parse losslessly into a long. Anything else
+     * is hashed to 64 bits, where an accidental collision is vanishingly unlikely.
+     *
+     * @param id The message or thread ID
+     * @return The key for the ID
+     */
+    public static long toKey(String id) {
+        int length = id.length();
+        if (length > 0 && length <= 16) {
+            long key = 0;
+            boolean hex = true;
+            for (int i = 0; i < length && hex; i++) {
+                int digit = Character.digit(id.charAt(i), 16);
+                hex = digit >= 0 && !Character.isUpperCase(id.charAt(i));
+                key = (key << 4) | digit;
+            }
+            if (hex) {
+                return key;
+            }
+        }
+        return hash(id);
+    }
+
+    private static long hash(String id) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : id.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
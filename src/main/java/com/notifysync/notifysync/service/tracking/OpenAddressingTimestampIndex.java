@@ -0,0 +1,89 @@
+package com.notifysync.notifysync.service.tracking;
+
+/**
+ * {@link TimestampIndex} in two parallel primitive arrays with linear probing.
+ * <p>
+ * Costs about 16 bytes per slot and no objects per entry, so millions of IDs fit in a
+ * few tens of MB.
+ */
+public class OpenAddressingTimestampIndex extends ProbingTimestampIndex {
+
+    private long[] keys;
+    private long[] timestamps;
+    private int size;
+
+    private boolean hasZeroKey;
+    private long zeroKeyTimestamp;
+
+    public OpenAddressingTimestampIndex(int expectedSize) {
+        int capacity = capacityFor(expectedSize);
+        keys = new long[capacity];
+        timestamps = new long[capacity];
+    }
+
+    @Override
+    protected int capacity() {
+        return keys.length;
+    }
+
+    @Override
+    protected long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    @Override
+    protected long timestampAt(int slot) {
+        return timestamps[slot];
+    }
+
+    @Override
+    protected void writeSlot(int slot, long key, long timestamp) {
+        keys[slot] = key;
+        timestamps[slot] = timestamp;
+    }
+
+    @Override
+    protected void writeTimestamp(int slot, long timestamp) {
+        timestamps[slot] = timestamp;
+    }
+
+    @Override
+    protected int storedSize() {
+        return size;
+    }
+
+    @Override
+    protected void storeSize(int size) {
+        this.size = size;
+    }
+
+    @Override
+    protected boolean hasZeroKey() {
+        return hasZeroKey;
+    }
+
+    @Override
+    protected long zeroKeyTimestamp() {
+        return zeroKeyTimestamp;
+    }
+
+    @Override
+    protected void storeZeroKey(boolean present, long timestamp) {
+        hasZeroKey = present;
+        zeroKeyTimestamp = timestamp;
+    }
+
+    @Override
+    protected void grow(int newCapacity) {
+        long[] oldKeys = keys;
+        long[] oldTimestamps = timestamps;
+        keys = new long[newCapacity];
+        timestamps = new long[newCapacity];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                insertFresh(oldKeys[i], oldTimestamps[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.notifysync.notifysync.service.tracking;
+
+/**
+ * Linear-probing hash table logic for {@link TimestampIndex}, independent of where
+ * the slots live.
+ * <p>
+ * Key 0 marks an empty slot, so an entry with key 0 is kept outside the table.
+ * Removal uses backward-shift deletion, so there are no tombstones to degrade probing.
+ * Subclasses provide slot storage and are responsible for growing it.
+ */
+public abstract class ProbingTimestampIndex implements TimestampIndex {
+
+    protected static final long EMPTY = 0L;
+    protected static final float MAX_LOAD = 0.7f;
+
+    /** Number of slots; always a power of two */
+    protected abstract int capacity();
+
+    protected abstract long keyAt(int slot);
+
+    protected abstract long timestampAt(int slot);
+
+    protected abstract void writeSlot(int slot, long key, long timestamp);
+
+    protected abstract void writeTimestamp(int slot, long timestamp);
+
+    protected abstract int storedSize();
+
+    protected abstract void storeSize(int size);
+
+    protected abstract boolean hasZeroKey();
+
+    protected abstract long zeroKeyTimestamp();
+
+    protected abstract void storeZeroKey(boolean present, long timestamp);
+
+    /**
+     * Replace the storage with an empty one of {@code newCapacity} slots and reinsert
+     * every entry with {@link #insertFresh}
+     */
+    protected abstract void grow(int newCapacity);
+
+    @Override
+    public synchronized long get(long key) {
+        if (key == EMPTY) {
+            return hasZeroKey() ? zeroKeyTimestamp() : MISSING;
+        }
+        int mask = capacity() - 1;
+        for (int slot = slotFor(key, mask); ; slot = (slot + 1) & mask) {
+            long current = keyAt(slot);
+            if (current == key) {
+                return timestampAt(slot);
+            }
+            if (current == EMPTY) {
+                return MISSING;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void put(long key, long timestamp) {
+        if (key == EMPTY) {
+            if (!hasZeroKey()) {
+                storeSize(storedSize() + 1);
+            }
+            storeZeroKey(true, timestamp);
+            return;
+        }
+
+        int mask = capacity() - 1;
+        int slot = slotFor(key, mask);
+        long current;
+        while ((current = keyAt(slot)) != EMPTY && current != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (current == key) {
+            writeTimestamp(slot, timestamp);
+            return;
+        }
+
+        writeSlot(slot, key, timestamp);
+        int size = storedSize() + 1;
+        storeSize(size);
+        if (size > capacity() * MAX_LOAD) {
+            grow(capacity() << 1);
+        }
+    }
+
+    @Override
+    public synchronized boolean remove(long key) {
+        if (key == EMPTY) {
+            if (!hasZeroKey()) {
+                return false;
+            }
+            storeZeroKey(false, 0L);
+            storeSize(storedSize() - 1);
+            return true;
+        }
+
+        int mask = capacity() - 1;
+        for (int slot = slotFor(key, mask); ; slot = (slot + 1) & mask) {
+            long current = keyAt(slot);
+            if (current == EMPTY) {
+                return false;
+            }
+            if (current == key) {
+                removeSlot(slot);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public synchronized int removeOlderThan(long cutoff) {
+        int removed = 0;
+        if (hasZeroKey() && zeroKeyTimestamp() < cutoff) {
+            storeZeroKey(false, 0L);
+            storeSize(storedSize() - 1);
+            removed++;
+        }
+
+        int slot = 0;
+        while (slot < capacity()) {
+            if (keyAt(slot) != EMPTY && timestampAt(slot) < cutoff) {
+                // Backward shift may move an unvisited entry into this slot, so look at it again
+                removeSlot(slot);
+                removed++;
+            } else {
+                slot++;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized int size() {
+        return storedSize();
+    }
+
+    @Override
+    public synchronized void forEach(EntryVisitor visitor) {
+        if (hasZeroKey()) {
+            visitor.accept(EMPTY, zeroKeyTimestamp());
+        }
+        for (int slot = 0; slot < capacity(); slot++) {
+            long key = keyAt(slot);
+            if (key != EMPTY) {
+                visitor.accept(key, timestampAt(slot));
+            }
+        }
+    }
+
+    /**
+     * Insert into storage known to contain neither the key nor deletions, without size accounting
+     */
+    protected void insertFresh(long key, long timestamp) {
+        int mask = capacity() - 1;
+        int slot = slotFor(key, mask);
+        while (keyAt(slot) != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        writeSlot(slot, key, timestamp);
+    }
+
+    /**
+     * @return The smallest power-of-two slot count that holds {@code entries} below the load limit
+     */
+    protected static int capacityFor(int entries) {
+        return Integer.highestOneBit(Math.max(16, (int) (entries / MAX_LOAD)) - 1) << 1;
+    }
+
+    private void removeSlot(int slot) {
+        storeSize(storedSize() - 1);
+        int mask = capacity() - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        long nextKey;
+        while ((nextKey = keyAt(next)) != EMPTY) {
+            int home = slotFor(nextKey, mask);
+            // Move the entry back if its home slot is not between the gap and its position
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                writeSlot(gap, nextKey, timestampAt(next));
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        writeSlot(gap, EMPTY, 0L);
+    }
+
+    private static int slotFor(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
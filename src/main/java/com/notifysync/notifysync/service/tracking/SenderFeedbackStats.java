@@ -0,0 +1,19 @@
+package com.notifysync.notifysync.service.tracking;
+
+/**
+ * Recent feedback totals for a sender
+ *
+ * @param positiveCount Number of feedback events marking the sender's emails relevant
+ * @param totalCount Total number of feedback events for the sender
+ */
+public record SenderFeedbackStats(int positiveCount, int totalCount) {
+
+    public static final SenderFeedbackStats NONE = new SenderFeedbackStats(0, 0);
+
+    /**
+     * @return The share of positive feedback, or 0 when there is no feedback
+     */
+    public double relevanceRate() {
+        return totalCount == 0 ? 0.0 : (double) positiveCount / totalCount;
+    }
+}
@@ -0,0 +1,142 @@
+package com.notifysync.notifysync.service.tracking;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-sender feedback counters kept in daily ring buckets.
+ * <p>
+ * Each sender owns a fixed ring of {@code windowDays} buckets indexed by epoch day,
+ * plus running totals over the ring. When the day advances, the buckets that fall out
+ * of the window are subtracted from the totals and reset, so recording is amortised
+ * O(1) and a lookup returns the totals as they stand, reusing the last result until
+ * the totals change.
+ */
+public class SenderReputationIndex {
+
+    private static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final int windowDays;
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    public SenderReputationIndex(int windowDays) {
+        if (windowDays <= 0) {
+            throw new IllegalArgumentException("windowDays must be positive: " + windowDays);
+        }
+        this.windowDays = windowDays;
+    }
+
+    /**
+     * Count one feedback event for a sender
+     *
+     * @param senderEmail The sender's email address
+     * @param relevant Whether the feedback was positive
+     * @param timestampMillis When the feedback was given
+     */
+    public void record(String senderEmail, boolean relevant, long timestampMillis) {
+        if (senderEmail == null || senderEmail.isEmpty()) {
+            return;
+        }
+        counters.computeIfAbsent(senderEmail, k -> new Counters(windowDays))
+                .add(timestampMillis / MILLIS_PER_DAY, relevant);
+    }
+
+    /**
+     * Get the feedback totals for a sender within the window
+     *
+     * @param senderEmail The sender's email address
+     * @param nowMillis The current time
+     * @return The feedback totals, {@link SenderFeedbackStats#NONE} if there are none;
+     *         the same instance until the sender's totals change
+     */
+    public SenderFeedbackStats lookup(String senderEmail, long nowMillis) {
+        Counters senderCounters = senderEmail != null ? counters.get(senderEmail) : null;
+        if (senderCounters == null) {
+            return SenderFeedbackStats.NONE;
+        }
+        return senderCounters.sum(nowMillis / MILLIS_PER_DAY);
+    }
+
+    /**
+     * Drop senders whose buckets have all aged out of the window
+     *
+     * @return The number of senders removed
+     */
+    public int removeStale(long nowMillis) {
+        long today = nowMillis / MILLIS_PER_DAY;
+        int before = counters.size();
+        counters.values().removeIf(c -> c.isStale(today));
+        return before - counters.size();
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    private static final class Counters {
+        private final int[] positive;
+        private final int[] total;
+        private long currentDay = Long.MIN_VALUE;
+        private int positiveSum;
+        private int totalSum;
+        private SenderFeedbackStats stats = SenderFeedbackStats.NONE;
+
+        Counters(int windowDays) {
+            positive = new int[windowDays];
+            total = new int[windowDays];
+        }
+
+        synchronized void add(long day, boolean relevant) {
+            advance(day);
+            if (day <= currentDay - total.length) {
+                // Older than the window the ring currently holds
+                return;
+            }
+            int slot = (int) Math.floorMod(day, (long) total.length);
+            total[slot]++;
+            totalSum++;
+            if (relevant) {
+                positive[slot]++;
+                positiveSum++;
+            }
+            stats = null;
+        }
+
+        synchronized SenderFeedbackStats sum(long today) {
+            advance(today);
+            if (stats == null) {
+                stats = totalSum == 0 ? SenderFeedbackStats.NONE : new SenderFeedbackStats(positiveSum, totalSum);
+            }
+            return stats;
+        }
+
+        synchronized boolean isStale(long today) {
+            advance(today);
+            return totalSum == 0;
+        }
+
+        /**
+         * Move the window forward to end at {@code today}, dropping the days it leaves behind
+         */
+        private void advance(long today) {
+            if (today <= currentDay) {
+                return;
+            }
+            // Every slot holds a day inside the window ending at currentDay, so only the
+            // slots of the days being entered can hold counts that are now too old
+            long days = currentDay == Long.MIN_VALUE ? total.length : Math.min(today - currentDay, total.length);
+            for (long day = today - days + 1; day <= today; day++) {
+                int slot = (int) Math.floorMod(day, (long) total.length);
+                if (total[slot] != 0) {
+                    positiveSum -= positive[slot];
+                    totalSum -= total[slot];
+                    positive[slot] = 0;
+                    total[slot] = 0;
+                    stats = null;
+                }
+            }
+            currentDay = today;
+        }
+    }
+}
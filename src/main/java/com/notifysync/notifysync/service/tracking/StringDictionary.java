@@ -0,0 +1,81 @@
+package com.notifysync.notifysync.service.tracking;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reference-counted dictionary that maps repeated strings (senders, thread IDs) to
+ * small int handles, so each distinct value is stored once however many records
+ * refer to it. A value is dropped, and its handle reused, when its last reference is
+ * released.
+ */
+public class StringDictionary {
+
+    /** Handle standing for a null value */
+    public static final int NONE = -1;
+
+    private final Map<String, Integer> handles = new HashMap<>();
+    private String[] values = new String[64];
+    private int[] referenceCounts = new int[64];
+    private int[] freeHandles = new int[16];
+    private int freeCount;
+    private int nextHandle;
+
+    /**
+     * Get the handle for a value and add a reference to it
+     *
+     * @return The handle, or {@link #NONE} for null
+     */
+    public synchronized int acquire(String value) {
+        if (value == null) {
+            return NONE;
+        }
+
+        Integer existing = handles.get(value);
+        if (existing != null) {
+            referenceCounts[existing]++;
+            return existing;
+        }
+
+        int handle = freeCount > 0 ? freeHandles[--freeCount] : nextHandle++;
+        if (handle == values.length) {
+            values = Arrays.copyOf(values, handle << 1);
+            referenceCounts = Arrays.copyOf(referenceCounts, handle << 1);
+        }
+        values[handle] = value;
+        referenceCounts[handle] = 1;
+        handles.put(value, handle);
+        return handle;
+    }
+
+    /**
+     * Drop a reference taken with {@link #acquire}
+     */
+    public synchronized void release(int handle) {
+        if (handle == NONE || --referenceCounts[handle] > 0) {
+            return;
+        }
+
+        handles.remove(values[handle]);
+        values[handle] = null;
+        if (freeCount == freeHandles.length) {
+            freeHandles = Arrays.copyOf(freeHandles, freeCount << 1);
+        }
+        freeHandles[freeCount++] = handle;
+    }
+
+    /**
+     * @return The value of a live handle, or null for {@link #NONE}
+     */
+    public synchronized String lookup(int handle) {
+        return handle == NONE ? null : values[handle];
+    }
+
+    /**
+     * Number of distinct values currently referenced
+     */
+    public synchronized int size() {
+        return handles.size();
+    }
+}
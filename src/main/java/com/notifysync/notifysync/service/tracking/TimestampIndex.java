@@ -0,0 +1,45 @@
+package com.notifysync.notifysync.service.tracking;
+
+/**
+ * Map from a 64-bit key (such as a parsed Gmail message ID) to a timestamp,
+ * stored without boxing
+ */
+public interface TimestampIndex {
+
+    /** Returned by {@link #get(long)} when the key is not present */
+    long MISSING = Long.MIN_VALUE;
+
+    /**
+     * @return The timestamp stored for the key, or {@link #MISSING}
+     */
+    long get(long key);
+
+    /**
+     * Store a timestamp, replacing any previous one for the key
+     */
+    void put(long key, long timestamp);
+
+    /**
+     * @return true if the key was present
+     */
+    boolean remove(long key);
+
+    /**
+     * Remove every entry whose timestamp is before the cutoff
+     *
+     * @return The number of entries removed
+     */
+    int removeOlderThan(long cutoff);
+
+    int size();
+
+    /**
+     * Visit every entry; the index must not be modified from the visitor
+     */
+    void forEach(EntryVisitor visitor);
+
+    @FunctionalInterface
+    interface EntryVisitor {
+        void accept(long key, long timestamp);
+    }
+}
@@ -0,0 +1,382 @@
+package com.notifysync.notifysync.service.tracking;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Append-only write-ahead log of tracking events, one JSON record per line.
+ * <p>
+ * The journal is split into numbered generations. {@link #rotate()} closes the current
+ * generation so a snapshot can be taken that covers it; once the snapshot is safely
+ * written, {@link #deleteUpTo(long)} removes the generations it covers. On startup the
+ * generations newer than the snapshot are replayed in order. A torn record at the end
+ * of a generation (from a crash mid-write) is dropped.
+ * <p>
+ * Appends only serialize the record and queue it. A dedicated writer thread collects
+ * queued records for up to {@code groupCommitMillis} (or {@code groupCommitRecords}
+ * records), writes them in one call and syncs them together according to the
+ * {@link Durability} mode. A batch that fails to write is truncated back off the file
+ * and retried with backoff, so records only count as durable once they really are.
+ */
+@Slf4j
+public class TrackingJournal implements Closeable {
+
+    public enum Durability {
+        /** {@link #awaitDurable} blocks until the record is fsynced with its batch */
+        SYNC,
+        /** each batch is fsynced, but callers never wait for it */
+        ASYNC,
+        /** leave flushing to the operating system */
+        NONE
+    }
+
+    private static final byte NEWLINE = '\n';
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 5_000;
+
+    private final Path directory;
+    private final String filePrefix;
+    private final ObjectMapper objectMapper;
+    private final Durability durability;
+    private final int groupCommitRecords;
+    private final long groupCommitMillis;
+
+    private final BlockingQueue<PendingRecord> queue = new LinkedBlockingQueue<>();
+    private final Object durableLock = new Object();
+    private Thread writer;
+    private volatile boolean running;
+    private volatile boolean writerFinished;
+
+    // Producer side, guarded by this
+    private long generation;
+    private long recordsInGeneration;
+    private long nextSequence;
+
+    // Writer thread side
+    private FileChannel channel;
+    private long channelGeneration = -1;
+
+    // Guarded by durableLock
+    private long durableSequence;
+
+    public TrackingJournal(Path baseFile, ObjectMapper objectMapper, Durability durability,
+                           int groupCommitRecords, long groupCommitMillis) {
+        Path absolute = baseFile.toAbsolutePath();
+        this.directory = absolute.getParent();
+        this.filePrefix = absolute.getFileName() + ".journal-";
+        this.objectMapper = objectMapper;
+        this.durability = durability;
+        this.groupCommitRecords = Math.max(1, groupCommitRecords);
+        this.groupCommitMillis = groupCommitMillis;
+    }
+
+    /**
+     * Replay the generations not covered by the snapshot and start the writer on a new generation
+     *
+     * @param snapshotGeneration The newest generation already contained in the snapshot
+     * @param replayer Receives each replayed record in order
+     * @return The number of records replayed
+     */
+    public synchronized long open(long snapshotGeneration, Consumer<JournalRecord> replayer) throws IOException {
+        Files.createDirectories(directory);
+
+        long replayed = 0;
+        long newestGeneration = snapshotGeneration;
+        for (long journalGeneration : listGenerations()) {
+            Path file = fileFor(journalGeneration);
+            if (journalGeneration <= snapshotGeneration) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+            replayed += replay(file, replayer);
+            newestGeneration = Math.max(newestGeneration, journalGeneration);
+        }
+
+        // Never append to a replayed file; its tail may have been torn
+        generation = newestGeneration + 1;
+        recordsInGeneration = 0;
+
+        running = true;
+        writer = new Thread(this::runWriter, "tracking-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        return replayed;
+    }
+
+    /**
+     * Queue one record. Never touches the disk; cost is independent of how much history is tracked.
+     *
+     * @return The record's sequence number, for {@link #awaitDurable}
+     */
+    public synchronized long append(JournalRecord record) throws IOException {
+        if (!running) {
+            throw new IOException("Journal is not open");
+        }
+        byte[] json = objectMapper.writeValueAsBytes(record);
+        long sequence = ++nextSequence;
+        queue.add(new PendingRecord(sequence, generation, json));
+        recordsInGeneration++;
+        return sequence;
+    }
+
+    /**
+     * In {@link Durability#SYNC} mode, wait until a record is on disk. Returns immediately
+     * in the other modes. Must not be called while holding the journal's monitor.
+     *
+     * @throws IOException If the journal stopped before the record could be written
+     */
+    public void awaitDurable(long sequence) throws InterruptedException, IOException {
+        if (durability != Durability.SYNC) {
+            return;
+        }
+        synchronized (durableLock) {
+            while (durableSequence < sequence && !writerFinished) {
+                durableLock.wait(groupCommitMillis + 1000);
+            }
+            if (durableSequence < sequence) {
+                throw new IOException("Journal stopped before record " + sequence + " was written");
+            }
+        }
+    }
+
+    public synchronized long getRecordsInGeneration() {
+        return recordsInGeneration;
+    }
+
+    /**
+     * End the current generation; records appended from now on go to the next one
+     *
+     * @return The generation that was closed, to be covered by the next snapshot
+     */
+    public synchronized long rotate() {
+        long closed = generation;
+        generation++;
+        recordsInGeneration = 0;
+        return closed;
+    }
+
+    /**
+     * Delete generations that are contained in a snapshot
+     */
+    public void deleteUpTo(long coveredGeneration) throws IOException {
+        // The writer may still be finishing a covered generation; its records are in the
+        // snapshot already, and a file it recreates is discarded by the next open()
+        for (long journalGeneration : listGenerations()) {
+            if (journalGeneration <= coveredGeneration) {
+                Files.deleteIfExists(fileFor(journalGeneration));
+            }
+        }
+    }
+
+    /**
+     * Stop accepting records, write everything queued and close the file
+     */
+    @Override
+    public void close() throws IOException {
+        Thread stopping;
+        synchronized (this) {
+            running = false;
+            stopping = writer;
+        }
+        if (stopping == null) {
+            return;
+        }
+
+        try {
+            stopping.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (stopping.isAlive()) {
+            log.warn("Journal writer did not finish within {} ms; {} records may be lost",
+                    SHUTDOWN_TIMEOUT_MILLIS, queue.size());
+        }
+    }
+
+    private void runWriter() {
+        List<PendingRecord> batch = new ArrayList<>(groupCommitRecords);
+        try {
+            while (running || !queue.isEmpty()) {
+                PendingRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Give concurrent appends a short window to share the write and fsync
+                long deadline = System.currentTimeMillis() + groupCommitMillis;
+                while (batch.size() < groupCommitRecords && running) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    PendingRecord next = remaining > 0 ? queue.poll(remaining, TimeUnit.MILLISECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                queue.drainTo(batch, groupCommitRecords - batch.size());
+
+                writeBatch(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeChannel();
+            synchronized (durableLock) {
+                writerFinished = true;
+                durableLock.notifyAll();
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingRecord> batch) throws InterruptedException {
+        int start = 0;
+        // A batch spans a rotation at most rarely; write each generation's run to its own file
+        while (start < batch.size()) {
+            long batchGeneration = batch.get(start).generation();
+            int end = start;
+            int bytes = 0;
+            while (end < batch.size() && batch.get(end).generation() == batchGeneration) {
+                bytes += batch.get(end).json().length + 1;
+                end++;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(bytes);
+            for (int i = start; i < end; i++) {
+                buffer.put(batch.get(i).json()).put(NEWLINE);
+            }
+            buffer.flip();
+
+            // Later records must not become durable ahead of these, so keep retrying them
+            long backoffMillis = 100;
+            while (!writeRun(buffer.rewind(), batchGeneration, end - start)) {
+                if (!running) {
+                    log.error("Giving up on {} email tracking journal records at shutdown", batch.size() - start);
+                    return;
+                }
+                TimeUnit.MILLISECONDS.sleep(backoffMillis);
+                backoffMillis = Math.min(backoffMillis * 2, MAX_RETRY_BACKOFF_MILLIS);
+            }
+
+            synchronized (durableLock) {
+                durableSequence = batch.get(end - 1).sequence();
+                durableLock.notifyAll();
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Append records to their generation's file and sync them
+     *
+     * @return false if they could not be written; nothing of them is left in the file then
+     */
+    private boolean writeRun(ByteBuffer buffer, long batchGeneration, int records) {
+        long position = -1;
+        try {
+            if (channelGeneration != batchGeneration) {
+                closeChannel();
+                channel = FileChannel.open(fileFor(batchGeneration),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                channelGeneration = batchGeneration;
+            }
+            position = channel.size();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (durability != Durability.NONE) {
+                channel.force(false);
+            }
+            return true;
+        } catch (IOException e) {
+            log.error("Failed to write {} records to email tracking journal, retrying", records, e);
+            if (position >= 0) {
+                // A partial write would leave a torn line in the middle of the file
+                try {
+                    channel.truncate(position);
+                } catch (IOException truncateError) {
+                    log.error("Failed to discard partly written journal records", truncateError);
+                }
+            }
+            closeChannel();
+            return false;
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null && channel.isOpen()) {
+            try {
+                if (durability != Durability.NONE) {
+                    channel.force(false);
+                }
+                channel.close();
+            } catch (IOException e) {
+                log.error("Failed to close email tracking journal", e);
+            }
+        }
+        channelGeneration = -1;
+    }
+
+    private long replay(Path file, Consumer<JournalRecord> replayer) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        long count = 0;
+        int lineStart = 0;
+
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] != NEWLINE) continue;
+
+            if (i > lineStart) {
+                try {
+                    replayer.accept(objectMapper.readValue(content, lineStart, i - lineStart, JournalRecord.class));
+                    count++;
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable record in {} at offset {}", file.getFileName(), lineStart, e);
+                }
+            }
+            lineStart = i + 1;
+        }
+
+        if (lineStart < content.length) {
+            log.warn("Dropping torn record of {} bytes at the end of {}", content.length - lineStart, file.getFileName());
+        }
+        return count;
+    }
+
+    private List<Long> listGenerations() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, filePrefix + "*")) {
+            for (Path file : files) {
+                String suffix = file.getFileName().toString().substring(filePrefix.length());
+                try {
+                    generations.add(Long.parseLong(suffix));
+                } catch (NumberFormatException e) {
+                    log.debug("Ignoring unrelated file {}", file);
+                }
+            }
+        }
+        generations.sort(null);
+        return generations;
+    }
+
+    private Path fileFor(long journalGeneration) {
+        return directory.resolve(filePrefix + journalGeneration);
+    }
+
+    private record PendingRecord(long sequence, long generation, byte[] json) {
+    }
+}
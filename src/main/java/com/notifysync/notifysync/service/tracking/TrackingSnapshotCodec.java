@@ -0,0 +1,352 @@
+package com.notifysync.notifysync.service.tracking;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Streaming reader and writer for the binary tracking snapshot.
+ * <p>
+ * Layout: magic, version, journal generation, a dictionary of sender and thread IDs,
+ * then the processed IDs, processed email metadata and feedback, ending with a CRC32 of
+ * everything before it. Counts, lengths and timestamps are varints; timestamps are
+ * epoch millis, and expiries are stored relative to the earliest one.
+ * <p>
+ * The checksum can only be verified at the end, so while reading every count and length
+ * is checked against the bytes left in the file before anything is allocated for it.
+ */
+public final class TrackingSnapshotCodec {
+
+    private static final int MAGIC = 0x4E535453; // "NSTS"
+    private static final int VERSION = 1;
+
+    private static final int FLAG_IMPORTANT = 1;
+    private static final int FLAG_NOTIFIED = 2;
+
+    private TrackingSnapshotCodec() {
+    }
+
+    /**
+     * Check if a snapshot file is in the binary format, as opposed to legacy JSON
+     */
+    public static boolean isBinary(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    public static void write(EmailTrackingServiceImpl.StorageData data, OutputStream target) throws IOException {
+        // Senders and thread IDs repeat across records, so write each once and refer to it by index
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        Map<String, EmailTrackingServiceImpl.ProcessedEmailInfo> emails = orEmpty(data.getProcessedEmails());
+        Map<String, List<EmailTrackingServiceImpl.UserFeedback>> feedback = orEmpty(data.getUserFeedback());
+        for (EmailTrackingServiceImpl.ProcessedEmailInfo info : emails.values()) {
+            addToDictionary(dictionary, info.getThreadId());
+            addToDictionary(dictionary, info.getSenderEmail());
+        }
+        feedback.keySet().forEach(sender -> addToDictionary(dictionary, sender));
+
+        BufferedOutputStream buffered = new BufferedOutputStream(target);
+        CRC32 crc = new CRC32();
+        DataOutputStream out = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeVarLong(out, data.getJournalGeneration());
+
+        writeVarLong(out, dictionary.size());
+        for (String entry : dictionary.keySet()) {
+            writeString(out, entry);
+        }
+
+        long[] ids = data.getProcessedIds() != null ? data.getProcessedIds() : new long[0];
+        long[] expiries = data.getProcessedIdExpiries() != null ? data.getProcessedIdExpiries() : new long[0];
+        int idCount = Math.min(ids.length, expiries.length);
+        long baseExpiry = Long.MAX_VALUE;
+        for (int i = 0; i < idCount; i++) {
+            baseExpiry = Math.min(baseExpiry, expiries[i]);
+        }
+        writeVarLong(out, idCount);
+        if (idCount > 0) {
+            writeSignedVarLong(out, baseExpiry);
+            for (int i = 0; i < idCount; i++) {
+                out.writeLong(ids[i]);
+                writeVarLong(out, expiries[i] - baseExpiry);
+            }
+        }
+
+        writeVarLong(out, emails.size());
+        for (EmailTrackingServiceImpl.ProcessedEmailInfo info : emails.values()) {
+            writeString(out, info.getEmailId());
+            writeReference(out, dictionary, info.getThreadId());
+            writeString(out, info.getSubject());
+            writeReference(out, dictionary, info.getSenderEmail());
+            writeSignedVarLong(out, toEpochMillis(info.getProcessedTime()));
+            out.writeByte((info.isWasImportant() ? FLAG_IMPORTANT : 0) | (info.isWasNotified() ? FLAG_NOTIFIED : 0));
+        }
+
+        writeVarLong(out, feedback.size());
+        for (Map.Entry<String, List<EmailTrackingServiceImpl.UserFeedback>> entry : feedback.entrySet()) {
+            writeReference(out, dictionary, entry.getKey());
+            writeVarLong(out, entry.getValue().size());
+            for (EmailTrackingServiceImpl.UserFeedback fb : entry.getValue()) {
+                writeString(out, fb.getEmailId());
+                writeSignedVarLong(out, toEpochMillis(fb.getFeedbackTime()));
+                out.writeBoolean(fb.isRelevant());
+            }
+        }
+
+        // The checksum itself is written past the checked stream
+        out.flush();
+        new DataOutputStream(buffered).writeInt((int) crc.getValue());
+        buffered.flush();
+    }
+
+    /**
+     * @param size The length of the snapshot in bytes, which bounds the counts it can hold
+     */
+    public static EmailTrackingServiceImpl.StorageData read(InputStream source, long size) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(source);
+        CRC32 crc = new CRC32();
+        // The trailing checksum is not part of the checked content
+        SnapshotInput in = new SnapshotInput(new CheckedInputStream(buffered, crc), size - Integer.BYTES);
+
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a binary tracking snapshot");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported tracking snapshot version " + version);
+        }
+
+        EmailTrackingServiceImpl.StorageData data = new EmailTrackingServiceImpl.StorageData();
+        data.setJournalGeneration(readVarLong(in));
+
+        String[] dictionary = new String[readCount(in, 1)];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = readString(in);
+        }
+
+        int idCount = readCount(in, Long.BYTES + 1);
+        long[] ids = new long[idCount];
+        long[] expiries = new long[idCount];
+        if (idCount > 0) {
+            long baseExpiry = readSignedVarLong(in);
+            for (int i = 0; i < idCount; i++) {
+                ids[i] = in.readLong();
+                expiries[i] = baseExpiry + readVarLong(in);
+            }
+        }
+        data.setProcessedIds(ids);
+        data.setProcessedIdExpiries(expiries);
+
+        int emailCount = readCount(in, 6);
+        Map<String, EmailTrackingServiceImpl.ProcessedEmailInfo> emails = new HashMap<>();
+        for (int i = 0; i < emailCount; i++) {
+            EmailTrackingServiceImpl.ProcessedEmailInfo info = new EmailTrackingServiceImpl.ProcessedEmailInfo();
+            info.setEmailId(readString(in));
+            info.setThreadId(readReference(in, dictionary));
+            info.setSubject(readString(in));
+            info.setSenderEmail(readReference(in, dictionary));
+            info.setProcessedTime(fromEpochMillis(readSignedVarLong(in)));
+            int flags = in.readUnsignedByte();
+            info.setWasImportant((flags & FLAG_IMPORTANT) != 0);
+            info.setWasNotified((flags & FLAG_NOTIFIED) != 0);
+            emails.put(info.getEmailId(), info);
+        }
+        data.setProcessedEmails(emails);
+
+        int senderCount = readCount(in, 2);
+        Map<String, List<EmailTrackingServiceImpl.UserFeedback>> feedback = new HashMap<>();
+        for (int i = 0; i < senderCount; i++) {
+            String sender = readReference(in, dictionary);
+            int count = readCount(in, 3);
+            List<EmailTrackingServiceImpl.UserFeedback> feedbackList = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+                EmailTrackingServiceImpl.UserFeedback fb = new EmailTrackingServiceImpl.UserFeedback();
+                fb.setEmailId(readString(in));
+                fb.setFeedbackTime(fromEpochMillis(readSignedVarLong(in)));
+                fb.setRelevant(in.readBoolean());
+                feedbackList.add(fb);
+            }
+            feedback.put(sender, feedbackList);
+        }
+        data.setUserFeedback(feedback);
+
+        int expectedCrc = (int) crc.getValue();
+        if (new DataInputStream(buffered).readInt() != expectedCrc) {
+            throw new IOException("Tracking snapshot checksum mismatch");
+        }
+        return data;
+    }
+
+    private static <K, V> Map<K, V> orEmpty(Map<K, V> map) {
+        return map != null ? map : Map.of();
+    }
+
+    private static void addToDictionary(Map<String, Integer> dictionary, String value) {
+        if (value != null) {
+            dictionary.putIfAbsent(value, dictionary.size());
+        }
+    }
+
+    private static void writeReference(DataOutputStream out, Map<String, Integer> dictionary, String value)
+            throws IOException {
+        writeVarLong(out, value == null ? 0 : dictionary.get(value) + 1);
+    }
+
+    private static String readReference(DataInputStream in, String[] dictionary) throws IOException {
+        long reference = readVarLong(in);
+        if (reference == 0) {
+            return null;
+        }
+        if (reference > dictionary.length) {
+            throw new IOException("Invalid dictionary reference " + reference);
+        }
+        return dictionary[(int) reference - 1];
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, utf8.length + 1L);
+        out.write(utf8);
+    }
+
+    private static String readString(SnapshotInput in) throws IOException {
+        long length = readVarLong(in);
+        if (length == 0) {
+            return null;
+        }
+        if (length - 1 > in.remaining()) {
+            throw new IOException("Invalid string length " + length + " in tracking snapshot");
+        }
+        byte[] utf8 = new byte[(int) length - 1];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read the number of entries that follow, each taking at least {@code minBytes}
+     */
+    private static int readCount(SnapshotInput in, int minBytes) throws IOException {
+        long count = readVarLong(in);
+        if (count < 0 || count > in.remaining() / minBytes) {
+            throw new IOException("Invalid count " + count + " in tracking snapshot");
+        }
+        return (int) count;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in tracking snapshot");
+    }
+
+    private static void writeSignedVarLong(DataOutputStream out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static long readSignedVarLong(DataInputStream in) throws IOException {
+        long zigzag = readVarLong(in);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime fromEpochMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    /**
+     * Data input that knows how many bytes of the snapshot are left to decode
+     */
+    private static final class SnapshotInput extends DataInputStream {
+
+        private final long size;
+
+        SnapshotInput(InputStream source, long size) {
+            super(new CountingInputStream(source));
+            this.size = size;
+        }
+
+        long remaining() {
+            return size - ((CountingInputStream) in).consumed;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long consumed;
+
+        CountingInputStream(InputStream source) {
+            super(source);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                consumed++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                consumed += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            consumed += skipped;
+            return skipped;
+        }
+    }
+}
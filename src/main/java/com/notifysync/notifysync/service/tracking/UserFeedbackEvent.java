@@ -0,0 +1,15 @@
+package com.notifysync.notifysync.service.tracking;
+
+/**
+ * Published whenever user feedback is recorded for a processed email,
+ * so that learning components can update without polling the tracking store.
+ *
+ * @param emailId The email ID the feedback refers to
+ * @param threadId The thread ID of the email
+ * @param subject The email subject
+ * @param senderEmail The sender's email address
+ * @param relevant Whether the user found the email relevant
+ */
+public record UserFeedbackEvent(String emailId, String threadId, String subject,
+                                String senderEmail, boolean relevant) {
+}
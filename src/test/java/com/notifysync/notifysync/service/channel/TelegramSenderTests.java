@@ -0,0 +1,55 @@
+package com.notifysync.notifysync.service.channel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TelegramSenderTests {
+
+    @Test
+    void keepsShortTextInOnePart() {
+        assertThat(TelegramSender.split("hello\nworld", 20)).containsExactly("hello\nworld");
+        assertThat(TelegramSender.split("", 20)).containsExactly("");
+    }
+
+    @Test
+    void splitsAtLastLineBreakThatFits() {
+        List<String> parts = TelegramSender.split("first line\nsecond line\nthird", 16);
+
+        assertThat(parts).containsExactly("first line", "second line", "third");
+    }
+
+    @Test
+    void splitsLongLineAtLimit() {
+        List<String> parts = TelegramSender.split("a".repeat(25), 10);
+
+        assertThat(parts).containsExactly("a".repeat(10), "a".repeat(10), "a".repeat(5));
+    }
+
+    @Test
+    void keepsSurrogatePairTogether() {
+        // The emoji is two chars and would straddle the limit
+        String text = "abc😀def";
+        List<String> parts = TelegramSender.split(text, 4);
+
+        assertThat(parts).containsExactly("abc", "😀de", "f");
+        assertThat(String.join("", parts)).isEqualTo(text);
+    }
+
+    @Test
+    void partsFitLimitAndKeepAllText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append("line ").append(i).append(' ').append("x".repeat(i % 37)).append('\n');
+        }
+
+        List<String> parts = TelegramSender.split(text.toString(), TelegramSender.MAX_MESSAGE_LENGTH);
+
+        assertThat(parts).hasSizeGreaterThan(1);
+        assertThat(parts).allSatisfy(part -> assertThat(part.length()).isLessThanOrEqualTo(TelegramSender.MAX_MESSAGE_LENGTH));
+        // Breaks are made at line breaks, which are dropped from the parts
+        assertThat(String.join("\n", parts)).isEqualTo(text.toString());
+    }
+}
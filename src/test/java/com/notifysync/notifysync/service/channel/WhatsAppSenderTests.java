@@ -0,0 +1,89 @@
+package com.notifysync.notifysync.service.channel;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Sends through a local stand-in for the Twilio API, configured the way
+ * {@code notifysync.whatsapp.api-base-url} configures the channel
+ */
+class WhatsAppSenderTests {
+
+    private static final String ACCOUNT_SID = "AC00000000000000000000000000000000";
+    private static final String MESSAGES_PATH = "/2010-04-01/Accounts/" + ACCOUNT_SID + "/Messages.json";
+
+    private final List<String> requestBodies = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private volatile int responseStatus = 201;
+
+    @BeforeEach
+    void startStandIn() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(MESSAGES_PATH, this::handleCreateMessage);
+        server.start();
+    }
+
+    @AfterEach
+    void stopStandIn() {
+        server.stop(0);
+    }
+
+    @Test
+    void sendsThroughConfiguredBaseUrl() throws Exception {
+        try (WhatsAppSender sender = newSender()) {
+            CompletableFuture<String> sid = sender.send("+15550001", "+15550002", "Quarterly report", "email 1");
+
+            assertThat(sid.get(10, TimeUnit.SECONDS)).isEqualTo("SM00000000000000000000000000000001");
+        }
+
+        assertThat(requestBodies).hasSize(1);
+        String body = URLDecoder.decode(requestBodies.get(0), StandardCharsets.UTF_8);
+        assertThat(body).contains("To=whatsapp:+15550002", "From=whatsapp:+15550001", "Body=Quarterly report");
+    }
+
+    @Test
+    void failsWhenApiRejectsMessage() {
+        responseStatus = 400;
+        try (WhatsAppSender sender = newSender()) {
+            CompletableFuture<String> sid = sender.send("+15550001", "invalid", "Quarterly report", "email 1");
+
+            assertThatThrownBy(() -> sid.get(10, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        }
+    }
+
+    private WhatsAppSender newSender() {
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        return new WhatsAppSender(ACCOUNT_SID, "token", baseUrl, "", 2, 10);
+    }
+
+    private void handleCreateMessage(HttpExchange exchange) throws IOException {
+        requestBodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+
+        String response = responseStatus == 201 ?
+                "{\"sid\":\"SM00000000000000000000000000000001\",\"account_sid\":\"" + ACCOUNT_SID + "\"," +
+                        "\"status\":\"queued\",\"body\":\"Quarterly report\"}" :
+                "{\"code\":21211,\"message\":\"Invalid 'To' Phone Number\",\"status\":400}";
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(responseStatus, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+}
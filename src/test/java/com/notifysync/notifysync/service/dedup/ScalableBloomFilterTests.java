@@ -0,0 +1,80 @@
+package com.notifysync.notifysync.service.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScalableBloomFilterTests {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    @Test
+    void addsLargerSlicesAsItFillsUp() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(FALSE_POSITIVE_RATE, 100);
+        List<Long> sliceSizes = new ArrayList<>();
+        long previousBytes = 0;
+
+        // Slices hold 100, 200, 400 and 800 keys
+        for (long key = 1; key <= 1_500; key++) {
+            filter.add(key);
+            long bytes = filter.sizeInBytes();
+            if (bytes != previousBytes) {
+                sliceSizes.add(bytes - previousBytes);
+                previousBytes = bytes;
+            }
+        }
+
+        assertThat(sliceSizes).hasSize(4);
+        for (int i = 1; i < sliceSizes.size(); i++) {
+            // Twice the keys at a tighter rate takes more than twice the bits
+            assertThat(sliceSizes.get(i)).isGreaterThan(sliceSizes.get(i - 1) * 2);
+        }
+        for (long key = 1; key <= 1_500; key++) {
+            assertThat(filter.mightContain(key)).isTrue();
+        }
+    }
+
+    @Test
+    void staysBelowTargetRateWellPastInitialCapacity() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(FALSE_POSITIVE_RATE, 1_000);
+        for (long key = 0; key < 50_000; key++) {
+            filter.add(key);
+        }
+
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (long key = 1_000_000; key < 1_000_000 + probes; key++) {
+            if (filter.mightContain(key)) {
+                falsePositives++;
+            }
+        }
+        assertThat((double) falsePositives / probes).isLessThan(FALSE_POSITIVE_RATE);
+    }
+
+    @Test
+    void roundTripsThroughStream() throws IOException {
+        ScalableBloomFilter filter = new ScalableBloomFilter(FALSE_POSITIVE_RATE, 64);
+        for (long key = 0; key < 500; key++) {
+            filter.add(key * 31);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        filter.writeTo(new DataOutputStream(bytes));
+        ScalableBloomFilter restored = ScalableBloomFilter.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertThat(restored.size()).isEqualTo(filter.size());
+        assertThat(restored.sizeInBytes()).isEqualTo(filter.sizeInBytes());
+        for (long key = 0; key < 500; key++) {
+            assertThat(restored.mightContain(key * 31)).isTrue();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.notifysync.notifysync.service.routing;
+
+import com.notifysync.notifysync.model.Email;
+import com.notifysync.notifysync.model.Notification;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RoutingIndexTests {
+
+    @Test
+    void senderDomainCoversSubdomains() {
+        RoutingRule rule = rule(Notification.NotificationChannel.TELEGRAM, "1001");
+        rule.setSenderDomains(List.of("@Example.com"));
+        RoutingIndex index = RoutingIndex.compile(List.of(rule));
+
+        assertThat(index.route(email("alerts@mail.example.com", "Hello", null)))
+                .containsEntry(Notification.NotificationChannel.TELEGRAM, List.of("1001"));
+        assertThat(index.route(email("someone@EXAMPLE.COM", "Hello", null))).isNotEmpty();
+        // A shared suffix is not a parent domain
+        assertThat(index.route(email("someone@notexample.com", "Hello", null))).isEmpty();
+        assertThat(index.route(email("someone@example.com.evil.org", "Hello", null))).isEmpty();
+    }
+
+    @Test
+    void multiWordKeywordMatchesWholeWordsInOrder() {
+        RoutingRule rule = rule(Notification.NotificationChannel.WHATSAPP, "+15550002");
+        rule.setKeywords(List.of("Server  Down!"));
+        RoutingIndex index = RoutingIndex.compile(List.of(rule));
+
+        assertThat(index.route(email("ops@example.com", "ALERT: server down in eu-west", null))).isNotEmpty();
+        assertThat(index.route(email("ops@example.com", "Status", "The server, down since 9am, is back"))).isNotEmpty();
+        assertThat(index.route(email("ops@example.com", "Down server restarted", null))).isEmpty();
+        assertThat(index.route(email("ops@example.com", "webserver downtime", null))).isEmpty();
+    }
+
+    @Test
+    void keywordsOfDifferentLengthsMatchTogether() {
+        RoutingRule invoices = rule(Notification.NotificationChannel.TELEGRAM, "1001");
+        invoices.setKeywords(List.of("invoice"));
+        RoutingRule overdue = rule(Notification.NotificationChannel.TELEGRAM, "1002");
+        overdue.setKeywords(List.of("payment is overdue"));
+        RoutingIndex index = RoutingIndex.compile(List.of(invoices, overdue));
+
+        assertThat(index.route(email("billing@example.com", "Invoice 42: payment is overdue", null)))
+                .containsEntry(Notification.NotificationChannel.TELEGRAM, List.of("1001", "1002"));
+    }
+
+    @Test
+    void recipientOfSeveralRulesIsRoutedOnce() {
+        RoutingRule byDomain = rule(Notification.NotificationChannel.TELEGRAM, "1001");
+        byDomain.setSenderDomains(List.of("example.com"));
+        RoutingRule byLabel = rule(Notification.NotificationChannel.TELEGRAM, " 1001 ");
+        byLabel.setLabels(List.of("Label_7"));
+        RoutingIndex index = RoutingIndex.compile(List.of(byDomain, byLabel));
+
+        Email email = email("a@example.com", "Hello", null);
+        email.setLabelIds(List.of("INBOX", "Label_7"));
+        Map<Notification.NotificationChannel, List<String>> routed = index.route(email);
+
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(routed).containsExactly(Map.entry(Notification.NotificationChannel.TELEGRAM, List.of("1001")));
+    }
+
+    @Test
+    void rejectsRuleWithoutAddress() {
+        RoutingRule rule = rule(Notification.NotificationChannel.TELEGRAM, " ");
+
+        assertThatThrownBy(() -> RoutingIndex.compile(List.of(rule))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static RoutingRule rule(Notification.NotificationChannel channel, String address) {
+        RoutingRule rule = new RoutingRule();
+        rule.setChannel(channel);
+        rule.setAddress(address);
+        return rule;
+    }
+
+    private static Email email(String senderEmail, String subject, String snippet) {
+        return Email.builder()
+                .id("18e0a1b2c3d4e5f6")
+                .senderEmail(senderEmail)
+                .subject(subject)
+                .snippet(snippet)
+                .build();
+    }
+}
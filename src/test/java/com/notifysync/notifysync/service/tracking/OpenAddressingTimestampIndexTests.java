@@ -0,0 +1,70 @@
+package com.notifysync.notifysync.service.tracking;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OpenAddressingTimestampIndexTests {
+
+    @Test
+    void removeKeepsCollidingKeysReachable() {
+        OpenAddressingTimestampIndex index = new OpenAddressingTimestampIndex(16);
+        // Enough keys in a small table that probe runs overlap and wrap around
+        for (long key = 1; key <= 20; key++) {
+            index.put(key, key * 10);
+        }
+
+        for (long key = 1; key <= 20; key += 2) {
+            assertThat(index.remove(key)).isTrue();
+        }
+
+        assertThat(index.size()).isEqualTo(10);
+        for (long key = 1; key <= 20; key++) {
+            assertThat(index.get(key)).isEqualTo(key % 2 == 0 ? key * 10 : TimestampIndex.MISSING);
+        }
+        assertThat(index.remove(1)).isFalse();
+    }
+
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        OpenAddressingTimestampIndex index = new OpenAddressingTimestampIndex(16);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 50_000; i++) {
+            // A small key range forces frequent collisions, removals and reinserts
+            long key = random.nextInt(2_000) - 1_000;
+            if (random.nextInt(3) == 0) {
+                assertThat(index.remove(key)).isEqualTo(expected.remove(key) != null);
+            } else {
+                long timestamp = random.nextLong();
+                index.put(key, timestamp);
+                expected.put(key, timestamp);
+            }
+        }
+
+        assertThat(index.size()).isEqualTo(expected.size());
+        Map<Long, Long> actual = new HashMap<>();
+        index.forEach(actual::put);
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    void removeOlderThanRevisitsShiftedEntries() {
+        OpenAddressingTimestampIndex index = new OpenAddressingTimestampIndex(16);
+        for (long key = 0; key < 40; key++) {
+            index.put(key, key);
+        }
+
+        assertThat(index.removeOlderThan(30)).isEqualTo(30);
+
+        assertThat(index.size()).isEqualTo(10);
+        for (long key = 0; key < 40; key++) {
+            assertThat(index.get(key)).isEqualTo(key < 30 ? TimestampIndex.MISSING : key);
+        }
+    }
+}
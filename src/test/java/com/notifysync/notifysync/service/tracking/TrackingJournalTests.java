@@ -0,0 +1,82 @@
+package com.notifysync.notifysync.service.tracking;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrackingJournalTests {
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    void replaysCompleteRecordsAndDropsTornTail() throws Exception {
+        Path baseFile = directory.resolve("tracking.json");
+        try (TrackingJournal journal = newJournal(baseFile)) {
+            journal.open(0, record -> { });
+            long last = 0;
+            for (int i = 0; i < 3; i++) {
+                last = journal.append(JournalRecord.processed(processed("email-" + i)));
+            }
+            journal.awaitDurable(last);
+        }
+
+        // A crash mid-write leaves a partial line at the end of the generation
+        Path generationFile = directory.resolve("tracking.json.journal-1");
+        Files.write(generationFile, "{\"type\":\"PROCESSED\",\"processedEm".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        List<JournalRecord> replayed = new ArrayList<>();
+        try (TrackingJournal journal = newJournal(baseFile)) {
+            assertThat(journal.open(0, replayed::add)).isEqualTo(3);
+        }
+        assertThat(replayed).extracting(record -> record.getProcessedEmail().getEmailId())
+                .containsExactly("email-0", "email-1", "email-2");
+    }
+
+    @Test
+    void skipsGenerationsCoveredBySnapshot() throws Exception {
+        Path baseFile = directory.resolve("tracking.json");
+        try (TrackingJournal journal = newJournal(baseFile)) {
+            journal.open(0, record -> { });
+            journal.awaitDurable(journal.append(JournalRecord.processed(processed("old"))));
+            long covered = journal.rotate();
+            journal.awaitDurable(journal.append(JournalRecord.processed(processed("new"))));
+            assertThat(covered).isEqualTo(1);
+        }
+
+        List<JournalRecord> replayed = new ArrayList<>();
+        try (TrackingJournal journal = newJournal(baseFile)) {
+            journal.open(1, replayed::add);
+        }
+        assertThat(replayed).extracting(record -> record.getProcessedEmail().getEmailId())
+                .containsExactly("new");
+        assertThat(directory.resolve("tracking.json.journal-1")).doesNotExist();
+    }
+
+    private TrackingJournal newJournal(Path baseFile) {
+        return new TrackingJournal(baseFile, objectMapper, TrackingJournal.Durability.SYNC, 16, 5);
+    }
+
+    private static EmailTrackingServiceImpl.ProcessedEmailInfo processed(String emailId) {
+        EmailTrackingServiceImpl.ProcessedEmailInfo info = new EmailTrackingServiceImpl.ProcessedEmailInfo();
+        info.setEmailId(emailId);
+        info.setThreadId("thread-" + emailId);
+        info.setSenderEmail("sender@example.com");
+        info.setProcessedTime(LocalDateTime.of(2025, 3, 1, 12, 0));
+        info.setWasImportant(true);
+        return info;
+    }
+}
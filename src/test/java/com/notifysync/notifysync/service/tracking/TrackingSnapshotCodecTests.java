@@ -0,0 +1,117 @@
+package com.notifysync.notifysync.service.tracking;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TrackingSnapshotCodecTests {
+
+    @Test
+    void roundTripsSnapshot() throws IOException {
+        EmailTrackingServiceImpl.StorageData data = sampleData();
+
+        byte[] bytes = encode(data);
+        EmailTrackingServiceImpl.StorageData decoded = TrackingSnapshotCodec.read(
+                new ByteArrayInputStream(bytes), bytes.length);
+
+        assertThat(decoded.getJournalGeneration()).isEqualTo(7);
+        assertThat(decoded.getProcessedIds()).containsExactly(data.getProcessedIds());
+        assertThat(decoded.getProcessedIdExpiries()).containsExactly(data.getProcessedIdExpiries());
+        assertThat(decoded.getProcessedEmails()).isEqualTo(data.getProcessedEmails());
+        assertThat(decoded.getUserFeedback()).isEqualTo(data.getUserFeedback());
+    }
+
+    @Test
+    void rejectsCorruptedContent() throws IOException {
+        byte[] bytes = encode(sampleData());
+        // Flip a bit inside a string, which decodes fine but no longer matches the checksum
+        int subjectOffset = indexOf(bytes, "Quarterly report".getBytes());
+        bytes[subjectOffset] ^= 0x01;
+
+        assertThatThrownBy(() -> TrackingSnapshotCodec.read(new ByteArrayInputStream(bytes), bytes.length))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("checksum");
+    }
+
+    @Test
+    void rejectsLengthBeyondEndOfFile() throws IOException {
+        byte[] bytes = encode(sampleData());
+        // Turn the length of the subject into a 2 GB varint, as a corrupt file might
+        int lengthOffset = indexOf(bytes, "Quarterly report".getBytes()) - 1;
+        Arrays.fill(bytes, lengthOffset, lengthOffset + 4, (byte) 0xFF);
+        bytes[lengthOffset + 4] = 0x07;
+
+        assertThatThrownBy(() -> TrackingSnapshotCodec.read(new ByteArrayInputStream(bytes), bytes.length))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Invalid string length");
+    }
+
+    @Test
+    void rejectsTruncatedSnapshot() throws IOException {
+        byte[] bytes = encode(sampleData());
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+
+        assertThatThrownBy(() -> TrackingSnapshotCodec.read(new ByteArrayInputStream(truncated), truncated.length))
+                .isInstanceOf(IOException.class);
+    }
+
+    private static byte[] encode(EmailTrackingServiceImpl.StorageData data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TrackingSnapshotCodec.write(data, out);
+        return out.toByteArray();
+    }
+
+    private static int indexOf(byte[] haystack, byte[] needle) {
+        outer:
+        for (int i = 0; i <= haystack.length - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        throw new AssertionError("Not found in snapshot");
+    }
+
+    private static EmailTrackingServiceImpl.StorageData sampleData() {
+        LocalDateTime time = LocalDateTime.of(2025, 3, 1, 12, 30);
+
+        EmailTrackingServiceImpl.ProcessedEmailInfo notified = new EmailTrackingServiceImpl.ProcessedEmailInfo();
+        notified.setEmailId("18e0a1b2c3d4e5f6");
+        notified.setThreadId("thread-1");
+        notified.setSubject("Quarterly report");
+        notified.setSenderEmail("boss@example.com");
+        notified.setProcessedTime(time);
+        notified.setWasImportant(true);
+        notified.setWasNotified(true);
+
+        EmailTrackingServiceImpl.ProcessedEmailInfo skipped = new EmailTrackingServiceImpl.ProcessedEmailInfo();
+        skipped.setEmailId("18e0a1b2c3d4e5f7");
+        skipped.setThreadId("thread-1");
+        skipped.setSenderEmail("boss@example.com");
+        skipped.setProcessedTime(time.plusMinutes(5));
+
+        EmailTrackingServiceImpl.UserFeedback feedback = new EmailTrackingServiceImpl.UserFeedback();
+        feedback.setEmailId("18e0a1b2c3d4e5f6");
+        feedback.setFeedbackTime(time.plusHours(1));
+        feedback.setRelevant(true);
+
+        EmailTrackingServiceImpl.StorageData data = new EmailTrackingServiceImpl.StorageData();
+        data.setJournalGeneration(7);
+        data.setProcessedIds(new long[]{0x18e0a1b2c3d4e5f6L, 0x18e0a1b2c3d4e5f7L, 0L});
+        data.setProcessedIdExpiries(new long[]{1_740_000_000_000L, 1_740_000_300_000L, 1_739_999_000_000L});
+        data.setProcessedEmails(Map.of(notified.getEmailId(), notified, skipped.getEmailId(), skipped));
+        data.setUserFeedback(Map.of("boss@example.com", List.of(feedback)));
+        return data;
+    }
+}